@@ -0,0 +1,266 @@
+package com.rethoughtsolutions.swipecardentry;
+
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.ParcelFileDescriptor;
+import android.os.SystemClock;
+import android.test.ActivityInstrumentationTestCase2;
+import android.util.Log;
+import android.view.View;
+import android.widget.LinearLayout;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * GPU texture memory and bitmap count of a few views cycling through the card brands, for the
+ * shared {@link BrandAtlas} against separate bitmaps per image, as each view decoded before the
+ * atlas. The separate images are cut from the atlas and scaled to the screen, the same pixels the
+ * separate drawables decoded to.
+ * <p/>
+ * The texture lines of dumpsys gfxinfo are read before and after each run (Lollipop and above)
+ * and logged (tag BrandTextures), along with the bitmaps decoded and their size, which are also
+ * reported as instrumentation status. Run on a device with:
+ * ./gradlew :SwipeCardEntryLibrary:connectedAndroidTest
+ */
+public class BrandTextureBenchmark extends ActivityInstrumentationTestCase2<LatencyActivity> {
+
+    private static final String TAG = "BrandTextures";
+
+    private static final int VIEWS = 4;
+
+    private static final int CHANGES = 20;
+
+    /**
+     * A number of each card type, in the order of {@link #BRAND_IMAGES}.
+     */
+    private static final String[] NUMBERS = {"", "4", "51", "34"};
+
+    private static final int[] BRAND_IMAGES = {R.array.brand_atlas_generic_bank,
+            R.array.brand_atlas_visa_curved, R.array.brand_atlas_mastercard_curved,
+            R.array.brand_atlas_american_express_curved};
+
+    private static final int[] CVC_IMAGES = {R.array.brand_atlas_generic_bank,
+            R.array.brand_atlas_cvv_visa, R.array.brand_atlas_cvv_mc, R.array.brand_atlas_cvv_amex};
+
+    public BrandTextureBenchmark() {
+        super(LatencyActivity.class);
+    }
+
+    public void testAtlas() throws Throwable {
+        final LatencyActivity activity = getActivity();
+        final SwipeCardEntry[] entries = new SwipeCardEntry[VIEWS];
+        final long[] before = readTextureCache("atlas_before");
+        runTestOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                LinearLayout layout = new LinearLayout(activity);
+                layout.setOrientation(LinearLayout.VERTICAL);
+                for (int index = 0; index < entries.length; index++) {
+                    entries[index] = new SwipeCardEntry(activity);
+                    layout.addView(entries[index]);
+                }
+                activity.setContentView(layout);
+            }
+        });
+
+        for (int change = 1; change <= CHANGES; change++) {
+            final String number = NUMBERS[change % NUMBERS.length];
+            runTestOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    for (SwipeCardEntry entry : entries) {
+                        entry.setNumber(number);
+                    }
+                }
+            });
+            waitForFrame();
+        }
+
+        final Bitmap atlas = decodeAtlas(activity.getResources(), null);
+        report("atlas", before, readTextureCache("atlas_after"), 1, atlas.getByteCount());
+    }
+
+    public void testSeparate() throws Throwable {
+        final LatencyActivity activity = getActivity();
+        final SeparateBrandView[] views = new SeparateBrandView[VIEWS];
+        final long[] before = readTextureCache("separate_before");
+        runTestOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                LinearLayout layout = new LinearLayout(activity);
+                layout.setOrientation(LinearLayout.VERTICAL);
+                for (int index = 0; index < views.length; index++) {
+                    views[index] = new SeparateBrandView(activity);
+                    layout.addView(views[index]);
+                }
+                activity.setContentView(layout);
+            }
+        });
+
+        for (int change = 1; change <= CHANGES; change++) {
+            final int type = change % NUMBERS.length;
+            runTestOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    for (SeparateBrandView view : views) {
+                        view.setCardType(type);
+                    }
+                }
+            });
+            waitForFrame();
+        }
+
+        int bitmaps = 0;
+        long bytes = 0;
+        for (SeparateBrandView view : views) {
+            bitmaps += view.mDecodeCount;
+            bytes += view.mDecodeBytes;
+        }
+        report("separate", before, readTextureCache("separate_after"), bitmaps, bytes);
+    }
+
+    private void waitForFrame() {
+        getInstrumentation().waitForIdleSync();
+        //a couple of vsyncs, so the render thread has drawn & uploaded what changed
+        SystemClock.sleep(50);
+    }
+
+    /**
+     * Logs the texture lines of dumpsys gfxinfo for this process.
+     *
+     * @return the texture cache's used & maximum bytes, or -1 for each if they aren't reported
+     * in the form Lollipop uses (TextureCache used / max).
+     */
+    private long[] readTextureCache(String name) throws IOException {
+        final long[] cache = {-1L, -1L};
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+            return cache;
+        }
+
+        //free the textures of any bitmaps already garbage
+        Runtime.getRuntime().gc();
+        Runtime.getRuntime().runFinalization();
+        waitForFrame();
+
+        final List<String> lines = new ArrayList<String>();
+        ParcelFileDescriptor output = getInstrumentation().getUiAutomation().executeShellCommand(
+                "dumpsys gfxinfo " + getInstrumentation().getTargetContext().getPackageName());
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new ParcelFileDescriptor.AutoCloseInputStream(output)));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.toLowerCase().contains("texture")) {
+                    lines.add(line.trim());
+                }
+            }
+        } finally {
+            reader.close();
+        }
+
+        for (String line : lines) {
+            Log.i(TAG, name + ": " + line);
+            String[] fields = line.split("[\\s/]+");
+            if ((fields.length == 3) && ("TextureCache".equals(fields[0]))) {
+                try {
+                    cache[0] = Long.parseLong(fields[1]);
+                    cache[1] = Long.parseLong(fields[2]);
+                } catch (NumberFormatException e) {
+                    //not the Lollipop form
+                }
+            }
+        }
+        return cache;
+    }
+
+    private void report(String name, long[] before, long[] after, int bitmaps, long bytes) {
+        Bundle results = new Bundle();
+        results.putInt(name + "_bitmaps", bitmaps);
+        results.putLong(name + "_bitmap_bytes", bytes);
+        results.putLong(name + "_texture_cache_before_bytes", before[0]);
+        results.putLong(name + "_texture_cache_after_bytes", after[0]);
+        results.putLong(name + "_texture_cache_max_bytes", after[1]);
+        Log.i(TAG, name + ": " + results);
+        getInstrumentation().sendStatus(0, results);
+    }
+
+    /**
+     * @param options set to the atlas's density, or null.
+     * @return the atlas at its own density.
+     */
+    private static Bitmap decodeAtlas(Resources resources, BitmapFactory.Options options) {
+        if (options == null) {
+            options = new BitmapFactory.Options();
+        }
+        options.inScaled = false;
+        return BitmapFactory.decodeResource(resources, R.drawable.brand_atlas, options);
+    }
+
+    /**
+     * Draws the brand images as each view did before the atlas, decoding a separate bitmap of
+     * the brand & CVC image every time the card type changes.
+     */
+    private static final class SeparateBrandView extends View {
+
+        private final Bitmap mAtlas;
+
+        private final Matrix mScale = new Matrix();
+
+        private Bitmap mImage;
+
+        private Bitmap mCVCImage;
+
+        int mDecodeCount = 0;
+
+        long mDecodeBytes = 0;
+
+        SeparateBrandView(Context context) {
+            super(context);
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            mAtlas = decodeAtlas(getResources(), options);
+            final float scale = getResources().getDisplayMetrics().densityDpi
+                    / (float) options.inDensity;
+            mScale.setScale(scale, scale);
+            setCardType(0);
+        }
+
+        void setCardType(int type) {
+            mImage = decode(BRAND_IMAGES[type]);
+            mCVCImage = decode(CVC_IMAGES[type]);
+            invalidate();
+        }
+
+        private Bitmap decode(int arrayId) {
+            final int[] bounds = getResources().getIntArray(arrayId);
+            final Bitmap bitmap = Bitmap.createBitmap(mAtlas, bounds[0], bounds[1],
+                    bounds[2] - bounds[0], bounds[3] - bounds[1], mScale, true);
+            mDecodeCount++;
+            mDecodeBytes += bitmap.getByteCount();
+            return bitmap;
+        }
+
+        @Override
+        protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+            setMeasuredDimension(mImage.getWidth() + mCVCImage.getWidth(),
+                    Math.max(mImage.getHeight(), mCVCImage.getHeight()));
+        }
+
+        @Override
+        protected void onDraw(Canvas canvas) {
+            //both drawn, so each is uploaded, as the brand & then the CVC image would be
+            canvas.drawBitmap(mImage, 0, 0, null);
+            canvas.drawBitmap(mCVCImage, mImage.getWidth(), 0, null);
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.rethoughtsolutions.swipecardentry;
+
+
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.test.ActivityInstrumentationTestCase2;
+import android.util.Log;
+import android.view.KeyEvent;
+import android.view.View;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency from a key press being submitted to the first frame showing it drawn, for both
+ * backends: {@link SwipeCardEntry} drawing in onDraw, and {@link SurfaceSwipeCardEntry} drawing on
+ * its render thread. The main thread is kept busy with synthetic work in chunks of a few sizes,
+ * as if laying out or scrolling a heavy screen, to show what each backend does under load.
+ * <p/>
+ * The percentiles are logged (tag InputLatency) and reported as instrumentation status, run on a
+ * device with: ./gradlew :SwipeCardEntryLibrary:connectedAndroidTest
+ */
+public class InputLatencyBenchmark extends ActivityInstrumentationTestCase2<LatencyActivity> {
+
+    private static final String TAG = "InputLatency";
+
+    private static final int KEYSTROKES = 200;
+
+    /**
+     * How long the main thread is kept busy at a time, in milliseconds.
+     */
+    private static final int[] LOADS = {0, 8, 24};
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    private volatile String mExpectedNumber;
+
+    private volatile long mFrameTime;
+
+    private volatile CountDownLatch mFrameLatch;
+
+    private volatile boolean mLoading;
+
+    public InputLatencyBenchmark() {
+        super(LatencyActivity.class);
+    }
+
+    public void testOnDraw() throws Throwable {
+        for (int load : LOADS) {
+            measure(false, load);
+        }
+    }
+
+    public void testSurface() throws Throwable {
+        for (int load : LOADS) {
+            measure(true, load);
+        }
+    }
+
+    private void measure(final boolean surface, final int loadMillis) throws Throwable {
+        final LatencyActivity activity = getActivity();
+        final SwipeCardEntry[] entry = new SwipeCardEntry[1];
+        runTestOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                View view;
+                if (surface) {
+                    SurfaceSwipeCardEntry wrapper = new SurfaceSwipeCardEntry(activity);
+                    entry[0] = wrapper.getCardEntry();
+                    view = wrapper;
+                } else {
+                    entry[0] = new SwipeCardEntry(activity);
+                    view = entry[0];
+                }
+                activity.setContentView(view);
+                entry[0].setFrameObserver(new SwipeCardEntry.FrameObserver() {
+                    @Override
+                    public void onFrameDrawn(String number) {
+                        CountDownLatch latch = mFrameLatch;
+                        if ((latch != null) && (number.equals(mExpectedNumber))
+                                && (latch.getCount() > 0)) {
+                            mFrameTime = System.nanoTime();
+                            latch.countDown();
+                        }
+                    }
+                });
+            }
+        });
+        getInstrumentation().waitForIdleSync();
+        //let the surface be created & the render thread start
+        SystemClock.sleep(500);
+
+        startLoad(loadMillis);
+        final long[] latencies = new long[KEYSTROKES];
+        final Random random = new Random(1);
+        try {
+            for (int index = 0; index < KEYSTROKES; index++) {
+                //type a digit then delete it, so every key press changes the number drawn
+                final boolean digit = (index % 2) == 0;
+                mExpectedNumber = digit ? "4" : "";
+                mFrameLatch = new CountDownLatch(1);
+                final long start = System.nanoTime();
+                entry[0].submitKeyEvent(digit ? KeyEvent.KEYCODE_4 : KeyEvent.KEYCODE_DEL);
+                assertTrue("No frame drawn", mFrameLatch.await(2, TimeUnit.SECONDS));
+                latencies[index] = mFrameTime - start;
+
+                //out of step with vsync & the load, as a person types
+                SystemClock.sleep(20 + random.nextInt(40));
+            }
+        } finally {
+            mLoading = false;
+            mFrameLatch = null;
+        }
+        getInstrumentation().waitForIdleSync();
+
+        report((surface ? "surface" : "onDraw") + "_load" + loadMillis + "ms", latencies);
+    }
+
+    /**
+     * Keeps the main thread busy in chunks of the given length, leaving it free in between just
+     * long enough to handle whatever else has been queued.
+     */
+    private void startLoad(final int loadMillis) {
+        if (loadMillis == 0) {
+            return;
+        }
+        mLoading = true;
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (!mLoading) {
+                    return;
+                }
+                final long end = SystemClock.uptimeMillis() + loadMillis;
+                while (SystemClock.uptimeMillis() < end) {
+                    //spin, as a long layout pass would
+                }
+                mMainHandler.post(this);
+            }
+        });
+    }
+
+    private void report(String name, long[] latencies) {
+        Arrays.sort(latencies);
+        Bundle results = new Bundle();
+        results.putDouble(name + "_p50_ms", getPercentile(latencies, 50));
+        results.putDouble(name + "_p90_ms", getPercentile(latencies, 90));
+        results.putDouble(name + "_p99_ms", getPercentile(latencies, 99));
+        results.putDouble(name + "_max_ms", latencies[latencies.length - 1] / 1000000.0);
+        Log.i(TAG, name + ": " + results);
+        getInstrumentation().sendStatus(0, results);
+    }
+
+    private static double getPercentile(long[] sorted, int percentile) {
+        int index = Math.min(sorted.length - 1, (sorted.length * percentile) / 100);
+        return sorted[index] / 1000000.0;
+    }
+}
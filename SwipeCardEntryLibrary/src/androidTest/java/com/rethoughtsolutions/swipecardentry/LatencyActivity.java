@@ -0,0 +1,10 @@
+package com.rethoughtsolutions.swipecardentry;
+
+
+import android.app.Activity;
+
+/**
+ * Empty activity for {@link InputLatencyBenchmark} to put each backend in.
+ */
+public class LatencyActivity extends Activity {
+}
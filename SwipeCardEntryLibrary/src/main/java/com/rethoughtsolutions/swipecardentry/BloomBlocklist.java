@@ -0,0 +1,266 @@
+package com.rethoughtsolutions.swipecardentry;
+
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+
+/**
+ * {@link CardNumberCheck} backed by a memory mapped Bloom filter file, with a sorted table of the
+ * exact entries to confirm any positives from the filter. Lookups don't allocate, and are safe
+ * from any thread.
+ * <p/>
+ * Entries are either BIN/IIN prefixes (MIN_PREFIX_LENGTH to MAX_PREFIX_LENGTH digits) which block
+ * every number starting with them, or full card numbers which block only that number. Files are
+ * created with the library's buildBlocklist Gradle task (BloomBlocklistBuilder, in buildSrc) or
+ * {@link #write(Collection, double, OutputStream)}.
+ * <p/>
+ * File layout (big endian): a 24 byte header (magic, version, hash count, log2 of the filter size
+ * in bits, entry count, padding), the filter bits, then each entry's packed {@link CardNumber}
+ * longs, sorted.
+ */
+public class BloomBlocklist implements CardNumberCheck {
+
+    /**
+     * The shortest prefix entry.
+     */
+    public static final int MIN_PREFIX_LENGTH = CardNumberCheck.MIN_LENGTH;
+
+    /**
+     * The longest prefix entry, anything longer is taken to be a full card number.
+     */
+    public static final int MAX_PREFIX_LENGTH = 9;
+
+    private static final int MAGIC = 0x5343424C; // "SCBL"
+
+    private static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 24;
+
+    private static final int ENTRY_SIZE = 16;
+
+    private static final int MIN_LOG2_BITS = 6;
+
+    private static final int MAX_LOG2_BITS = 31;
+
+    private static final int MAX_HASH_COUNT = 16;
+
+    private final ByteBuffer mBuffer;
+
+    private final int mHashCount;
+
+    private final long mBitMask;
+
+    private final int mEntryCount;
+
+    private final int mEntriesOffset;
+
+    private BloomBlocklist(ByteBuffer buffer) throws IOException {
+        if ((buffer.capacity() < HEADER_SIZE) || (buffer.getInt(0) != MAGIC)) {
+            throw new IOException("Not a blocklist file");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported blocklist version " + buffer.getInt(4));
+        }
+
+        mBuffer = buffer;
+        mHashCount = buffer.getInt(8);
+        final int log2Bits = buffer.getInt(12);
+        mEntryCount = buffer.getInt(16);
+
+        if ((mHashCount < 1) || (mHashCount > MAX_HASH_COUNT) || (log2Bits < MIN_LOG2_BITS)
+                || (log2Bits > MAX_LOG2_BITS) || (mEntryCount < 0)) {
+            throw new IOException("Corrupt blocklist header");
+        }
+
+        mBitMask = (1L << log2Bits) - 1;
+        final long entriesOffset = HEADER_SIZE + ((1L << log2Bits) / 8);
+        if (entriesOffset + ((long) mEntryCount * ENTRY_SIZE) > buffer.capacity()) {
+            throw new IOException("Truncated blocklist file");
+        }
+        mEntriesOffset = (int) entriesOffset;
+    }
+
+    /**
+     * Memory maps the given blocklist file.
+     *
+     * @param file the file, as written by {@link #write(Collection, double, OutputStream)}.
+     * @return the blocklist.
+     * @throws IOException if the file can't be read or isn't a blocklist.
+     */
+    public static BloomBlocklist open(File file) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = randomAccessFile.getChannel();
+            return open(channel, 0, channel.size());
+        } finally {
+            //the mapping stays valid once the file is closed
+            randomAccessFile.close();
+        }
+    }
+
+    /**
+     * Memory maps a blocklist from part of a file, e.g. an uncompressed asset opened through an
+     * AssetFileDescriptor.
+     *
+     * @param channel  the channel to map.
+     * @param position the offset of the blocklist within the channel.
+     * @param size     the size of the blocklist.
+     * @return the blocklist.
+     * @throws IOException if the channel can't be mapped or doesn't hold a blocklist.
+     */
+    public static BloomBlocklist open(FileChannel channel, long position, long size)
+            throws IOException {
+        return new BloomBlocklist(channel.map(FileChannel.MapMode.READ_ONLY, position, size));
+    }
+
+    /**
+     * Builds a blocklist and writes it to the given stream.
+     *
+     * @param entries           the prefixes & full numbers to block.
+     * @param falsePositiveRate the target rate of filter hits that need confirming in the table,
+     *                          e.g. 0.01.
+     * @param out               the stream to write to, it is not closed.
+     * @throws IOException if the stream can't be written to.
+     */
+    public static void write(Collection<CardNumber> entries, double falsePositiveRate,
+            OutputStream out) throws IOException {
+        CardNumber[] sorted = entries.toArray(new CardNumber[entries.size()]);
+        Arrays.sort(sorted, new Comparator<CardNumber>() {
+            @Override
+            public int compare(CardNumber lhs, CardNumber rhs) {
+                return compareEntry(lhs.getPackedHigh(), lhs.getPackedLow(), rhs.getPackedHigh(),
+                        rhs.getPackedLow());
+            }
+        });
+
+        final int count = sorted.length;
+        final double optimalBits = (-Math.max(count, 1) * Math.log(falsePositiveRate))
+                / (Math.log(2) * Math.log(2));
+        int log2Bits = MIN_LOG2_BITS;
+        while ((log2Bits < MAX_LOG2_BITS) && ((1L << log2Bits) < optimalBits)) {
+            log2Bits++;
+        }
+        final long bitCount = 1L << log2Bits;
+        final int hashCount = (int) Math.max(1, Math.min(MAX_HASH_COUNT,
+                Math.round((bitCount / (double) Math.max(count, 1)) * Math.log(2))));
+
+        final byte[] bits = new byte[(int) (bitCount / 8)];
+        final long bitMask = bitCount - 1;
+        for (CardNumber entry : sorted) {
+            long hash = hash(entry.getPackedHigh(), entry.getPackedLow());
+            long h1 = hash & 0xFFFFFFFFL;
+            long h2 = hash >>> 32;
+            for (int index = 0; index < hashCount; index++) {
+                long bit = (h1 + (index * h2)) & bitMask;
+                bits[(int) (bit >>> 3)] |= 1 << (bit & 7);
+            }
+        }
+
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        data.writeInt(hashCount);
+        data.writeInt(log2Bits);
+        data.writeInt(count);
+        data.writeInt(0);
+        data.write(bits);
+        for (CardNumber entry : sorted) {
+            data.writeLong(entry.getPackedHigh());
+            data.writeLong(entry.getPackedLow());
+        }
+        data.flush();
+    }
+
+    /**
+     * @return the number of entries in the blocklist.
+     */
+    public int size() {
+        return mEntryCount;
+    }
+
+    /**
+     * Checks a card number against the blocklist, as {@link #isBlocked(long, long, boolean)}.
+     *
+     * @param number   the number.
+     * @param complete true to check the whole number as well as its prefixes.
+     * @return true if the number is blocked.
+     */
+    public boolean isBlocked(CardNumber number, boolean complete) {
+        return isBlocked(number.getPackedHigh(), number.getPackedLow(), complete);
+    }
+
+    @Override
+    public boolean isBlocked(long high, long low, boolean complete) {
+        final int prefixLength = Math.min(CardNumber.getLength(low), MAX_PREFIX_LENGTH);
+        for (int length = MIN_PREFIX_LENGTH; length <= prefixLength; length++) {
+            //a prefix packs to the leading nibbles, with its length as the low long
+            long prefixHigh = high & (~0L << (64 - (4 * length)));
+            if (contains(prefixHigh, length)) {
+                return true;
+            }
+        }
+
+        return complete && contains(high, low);
+    }
+
+    private boolean contains(long high, long low) {
+        long hash = hash(high, low);
+        long h1 = hash & 0xFFFFFFFFL;
+        long h2 = hash >>> 32;
+        for (int index = 0; index < mHashCount; index++) {
+            long bit = (h1 + (index * h2)) & mBitMask;
+            if ((mBuffer.get(HEADER_SIZE + (int) (bit >>> 3)) & (1 << (bit & 7))) == 0) {
+                return false;
+            }
+        }
+
+        //possible hit, confirm against the exact entries
+        int lowIndex = 0;
+        int highIndex = mEntryCount - 1;
+        while (lowIndex <= highIndex) {
+            int middle = (lowIndex + highIndex) >>> 1;
+            int offset = mEntriesOffset + (middle * ENTRY_SIZE);
+            int compare = compareEntry(mBuffer.getLong(offset), mBuffer.getLong(offset + 8), high,
+                    low);
+            if (compare < 0) {
+                lowIndex = middle + 1;
+            } else if (compare > 0) {
+                highIndex = middle - 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int compareEntry(long lhsHigh, long lhsLow, long rhsHigh, long rhsLow) {
+        if (lhsHigh != rhsHigh) {
+            return (lhsHigh < rhsHigh) ? -1 : 1;
+        }
+        if (lhsLow != rhsLow) {
+            return (lhsLow < rhsLow) ? -1 : 1;
+        }
+        return 0;
+    }
+
+    /**
+     * 64 bit mix of a packed card number, split into two 32 bit hashes for double hashing.
+     */
+    private static long hash(long high, long low) {
+        long hash = high ^ (low * 0x9E3779B97F4A7C15L);
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        hash *= 0xC4CEB9FE1A85EC53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,110 @@
+package com.rethoughtsolutions.swipecardentry;
+
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.util.SparseArray;
+
+/**
+ * The brand logos and CVC images, packed into a single bitmap at build time by the packBrandAtlas
+ * task. The atlas is decoded once per screen density and shared by every view, so switching card
+ * type draws a different part of the same bitmap instead of decoding new ones. Sprites are scaled
+ * to the screen as they're drawn, so should be drawn with a paint that filters bitmaps.
+ * <p/>
+ * Each image's position within the atlas is an integer-array resource (left, top, right, bottom)
+ * named brand_atlas_IMAGE, in the atlas's own pixels.
+ */
+final class BrandAtlas {
+
+    //by screen density, which picks the atlas drawn from and the scale it's drawn at
+    private static final SparseArray<BrandAtlas> sAtlases = new SparseArray<BrandAtlas>();
+
+    private final Bitmap mBitmap;
+
+    private final float mScale;
+
+    private final SparseArray<Sprite> mSprites = new SparseArray<Sprite>();
+
+    /**
+     * An image within the atlas, drawn at the size the separate drawable would have been decoded
+     * at for this screen.
+     */
+    static final class Sprite {
+
+        private final Bitmap mBitmap;
+
+        private final Rect mSource;
+
+        private final Rect mDestination;
+
+        private Sprite(Bitmap bitmap, Rect source, float scale) {
+            mBitmap = bitmap;
+            mSource = source;
+            mDestination = new Rect(0, 0, Math.round(source.width() * scale),
+                    Math.round(source.height() * scale));
+        }
+
+        int getWidth() {
+            return mDestination.right;
+        }
+
+        int getHeight() {
+            return mDestination.bottom;
+        }
+
+        /**
+         * Draws the image with its top left corner at the given position. Doesn't allocate, and
+         * may be called from any thread.
+         */
+        void draw(Canvas canvas, float left, float top, Paint paint) {
+            canvas.save();
+            canvas.translate(left, top);
+            canvas.drawBitmap(mBitmap, mSource, mDestination, paint);
+            canvas.restore();
+        }
+    }
+
+    private BrandAtlas(Resources resources) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        //decode at the atlas's own density, each sprite is scaled as it's drawn instead
+        options.inScaled = false;
+        mBitmap = BitmapFactory.decodeResource(resources, R.drawable.brand_atlas, options);
+
+        final int screenDensity = resources.getDisplayMetrics().densityDpi;
+        mScale = ((options.inDensity > 0) && (screenDensity > 0))
+                ? (screenDensity / (float) options.inDensity) : 1.0f;
+    }
+
+    /**
+     * @return the atlas for the resources' screen density, decoding it on first use.
+     */
+    static synchronized BrandAtlas get(Resources resources) {
+        final int density = resources.getDisplayMetrics().densityDpi;
+        BrandAtlas atlas = sAtlases.get(density);
+        if (atlas == null) {
+            atlas = new BrandAtlas(resources);
+            sAtlases.put(density, atlas);
+        }
+        return atlas;
+    }
+
+    /**
+     * @param resources the resources to read the index from.
+     * @param arrayId   the R.array.brand_atlas_IMAGE index of the image.
+     * @return the image.
+     */
+    synchronized Sprite getSprite(Resources resources, int arrayId) {
+        Sprite sprite = mSprites.get(arrayId);
+        if (sprite == null) {
+            int[] bounds = resources.getIntArray(arrayId);
+            sprite = new Sprite(mBitmap, new Rect(bounds[0], bounds[1], bounds[2], bounds[3]),
+                    mScale);
+            mSprites.put(arrayId, sprite);
+        }
+        return sprite;
+    }
+}
@@ -0,0 +1,308 @@
+package com.rethoughtsolutions.swipecardentry;
+
+
+import android.content.Context;
+import android.graphics.Rect;
+import android.os.Bundle;
+import android.text.InputType;
+import android.view.View;
+import android.view.ViewParent;
+import android.view.accessibility.AccessibilityEvent;
+import android.view.accessibility.AccessibilityManager;
+import android.view.accessibility.AccessibilityNodeInfo;
+import android.view.accessibility.AccessibilityNodeProvider;
+import android.widget.EditText;
+
+/**
+ * Exposes the number, expiry and CVC of a {@link SwipeCardEntry} as virtual text fields, so
+ * password managers and other accessibility based autofill can set each field's text directly
+ * (applied in one go through {@link SwipeCardEntry#fill(String, int, int, String)}) rather than
+ * typing it in a digit at a time. Setting text needs ACTION_SET_TEXT, so this is only used from
+ * Lollipop.
+ */
+final class CardAccessibilityProvider extends AccessibilityNodeProvider {
+
+    static final int VIRTUAL_NUMBER = 0;
+
+    static final int VIRTUAL_EXPIRY = 1;
+
+    static final int VIRTUAL_CVC = 2;
+
+    private static final int[] DESCRIPTIONS = {R.string.swipe_card_entry_number,
+            R.string.swipe_card_entry_expiry, R.string.swipe_card_entry_cvc};
+
+    private final SwipeCardEntry mHost;
+
+    private final Rect mBounds = new Rect();
+
+    private final int[] mLocation = new int[2];
+
+    //the field with accessibility focus, or View.NO_ID
+    private int mAccessibilityFocused = View.NO_ID;
+
+    CardAccessibilityProvider(SwipeCardEntry host) {
+        mHost = host;
+    }
+
+    @Override
+    public AccessibilityNodeInfo createAccessibilityNodeInfo(int virtualViewId) {
+        if (virtualViewId == View.NO_ID) {
+            AccessibilityNodeInfo info = AccessibilityNodeInfo.obtain(mHost);
+            mHost.onInitializeAccessibilityNodeInfo(info);
+            for (int field = VIRTUAL_NUMBER; field <= VIRTUAL_CVC; field++) {
+                info.addChild(mHost, field);
+            }
+            return info;
+        }
+        if ((virtualViewId < VIRTUAL_NUMBER) || (virtualViewId > VIRTUAL_CVC)) {
+            return null;
+        }
+
+        AccessibilityNodeInfo info = AccessibilityNodeInfo.obtain(mHost, virtualViewId);
+        info.setParent(mHost);
+        info.setPackageName(mHost.getContext().getPackageName());
+        info.setClassName(EditText.class.getName());
+        info.setContentDescription(mHost.getContext().getString(DESCRIPTIONS[virtualViewId]));
+        info.setInputType(InputType.TYPE_CLASS_NUMBER);
+        info.setEnabled(mHost.isEnabled());
+        info.setEditable(true);
+        info.addAction(AccessibilityNodeInfo.AccessibilityAction.ACTION_SET_TEXT);
+        if (virtualViewId == mAccessibilityFocused) {
+            info.setAccessibilityFocused(true);
+            info.addAction(
+                    AccessibilityNodeInfo.AccessibilityAction.ACTION_CLEAR_ACCESSIBILITY_FOCUS);
+        } else {
+            info.addAction(AccessibilityNodeInfo.AccessibilityAction.ACTION_ACCESSIBILITY_FOCUS);
+        }
+
+        if (virtualViewId == VIRTUAL_CVC) {
+            info.setPassword(true);
+        } else {
+            info.setText(getFieldText(virtualViewId));
+        }
+
+        mHost.getFieldBounds(virtualViewId, mBounds);
+        info.setBoundsInParent(mBounds);
+        info.setVisibleToUser((!mBounds.isEmpty()) && (mHost.isShown()));
+        mHost.getLocationOnScreen(mLocation);
+        mBounds.offset(mLocation[0], mLocation[1]);
+        info.setBoundsInScreen(mBounds);
+        return info;
+    }
+
+    @Override
+    public boolean performAction(int virtualViewId, int action, Bundle arguments) {
+        if (virtualViewId == View.NO_ID) {
+            return mHost.performAccessibilityAction(action, arguments);
+        }
+        if ((virtualViewId < VIRTUAL_NUMBER) || (virtualViewId > VIRTUAL_CVC)) {
+            return false;
+        }
+        switch (action) {
+            case AccessibilityNodeInfo.ACTION_ACCESSIBILITY_FOCUS:
+                return setAccessibilityFocus(virtualViewId);
+            case AccessibilityNodeInfo.ACTION_CLEAR_ACCESSIBILITY_FOCUS:
+                return clearAccessibilityFocus(virtualViewId);
+            case AccessibilityNodeInfo.ACTION_SET_TEXT:
+                return setText(virtualViewId, arguments);
+            default:
+                return false;
+        }
+    }
+
+    private boolean setAccessibilityFocus(int virtualViewId) {
+        if (mAccessibilityFocused == virtualViewId) {
+            return false;
+        }
+        if (mAccessibilityFocused != View.NO_ID) {
+            clearAccessibilityFocus(mAccessibilityFocused);
+        }
+        mAccessibilityFocused = virtualViewId;
+        //the focus highlight is drawn around the field's bounds along with the host
+        mHost.invalidate();
+        sendEvent(virtualViewId, AccessibilityEvent.TYPE_VIEW_ACCESSIBILITY_FOCUSED);
+        return true;
+    }
+
+    private boolean clearAccessibilityFocus(int virtualViewId) {
+        if (mAccessibilityFocused != virtualViewId) {
+            return false;
+        }
+        mAccessibilityFocused = View.NO_ID;
+        mHost.invalidate();
+        sendEvent(virtualViewId, AccessibilityEvent.TYPE_VIEW_ACCESSIBILITY_FOCUS_CLEARED);
+        return true;
+    }
+
+    /**
+     * Fills in the given field along with whatever is already in the others.
+     *
+     * @return false if the text wasn't applied, e.g. a CVC while the expiry is still empty.
+     */
+    private boolean setText(int virtualViewId, Bundle arguments) {
+        if (arguments == null) {
+            return false;
+        }
+
+        CharSequence text = arguments.getCharSequence(
+                AccessibilityNodeInfo.ACTION_ARGUMENT_SET_TEXT_CHARSEQUENCE);
+        String value = (text == null) ? "" : text.toString();
+        String number = mHost.getNumber();
+        int month = mHost.getExpiryMonth();
+        int year = mHost.getExpiryYear();
+        String cvc = mHost.getCVC();
+        switch (virtualViewId) {
+            case VIRTUAL_NUMBER:
+                number = value;
+                break;
+            case VIRTUAL_EXPIRY:
+                int expiry = parseExpiry(value);
+                if (expiry < 0) {
+                    return false;
+                }
+                month = expiry / 10000;
+                year = expiry % 10000;
+                break;
+            default:
+                cvc = value;
+                break;
+        }
+        String before = getFieldText(virtualViewId);
+        mHost.fill(number, month, year, cvc);
+        String after = getFieldText(virtualViewId);
+        if (before.equals(after)) {
+            return false;
+        }
+        sendTextChanged(virtualViewId, before, after);
+        return true;
+    }
+
+    /**
+     * Parses an expiry as M/YY, MM/YY, M/YYYY or MM/YYYY, with any separator (or spaces), or as
+     * 3 - 6 digits without one.
+     *
+     * @return the month * 10000 + the year as given (2 or 4 digits), or -1 if it isn't an expiry.
+     */
+    static int parseExpiry(String value) {
+        String digits = value.trim();
+        int separator = -1;
+        for (int index = 0; index < digits.length(); index++) {
+            if ((digits.charAt(index) < '0') || (digits.charAt(index) > '9')) {
+                separator = index;
+                break;
+            }
+        }
+
+        String month;
+        String year;
+        if (separator >= 0) {
+            month = digits.substring(0, separator);
+            year = digits.substring(separator + 1).replaceAll("[^0-9]", "");
+        } else if ((digits.length() >= 3) && (digits.length() <= 6)) {
+            //MYY, MMYY, MYYYY or MMYYYY
+            int monthLength = ((digits.length() % 2) == 0) ? 2 : 1;
+            month = digits.substring(0, monthLength);
+            year = digits.substring(monthLength);
+        } else {
+            return -1;
+        }
+
+        if ((month.length() < 1) || (month.length() > 2)
+                || ((year.length() != 2) && (year.length() != 4))) {
+            return -1;
+        }
+        for (int index = 0; index < month.length(); index++) {
+            if ((month.charAt(index) < '0') || (month.charAt(index) > '9')) {
+                return -1;
+            }
+        }
+        int monthValue = Integer.parseInt(month);
+        if ((monthValue < 1) || (monthValue > 12)) {
+            return -1;
+        }
+        return (monthValue * 10000) + Integer.parseInt(year);
+    }
+
+    /**
+     * @return the text of the given field, as shown.
+     */
+    private String getFieldText(int virtualViewId) {
+        switch (virtualViewId) {
+            case VIRTUAL_NUMBER:
+                return mHost.getNumber();
+            case VIRTUAL_EXPIRY:
+                return formatExpiry(mHost.getExpiryMonth(), mHost.getExpiryYear());
+            default:
+                return mHost.getCVC();
+        }
+    }
+
+    /**
+     * Tells accessibility services the given field's text has been set, then that the fields
+     * have all changed, as filling in a number also slides the expiry & CVC into view.
+     */
+    private void sendTextChanged(int virtualViewId, String before, String after) {
+        AccessibilityEvent event = obtainEvent(virtualViewId,
+                AccessibilityEvent.TYPE_VIEW_TEXT_CHANGED);
+        if (event == null) {
+            return;
+        }
+        event.setFromIndex(0);
+        event.setRemovedCount(before.length());
+        event.setAddedCount(after.length());
+        if (virtualViewId != VIRTUAL_CVC) {
+            //the lengths only for the CVC, as for any password field
+            event.setBeforeText(before);
+            event.getText().add(after);
+        }
+        final ViewParent parent = mHost.getParent();
+        parent.requestSendAccessibilityEvent(mHost, event);
+
+        AccessibilityEvent changed = AccessibilityEvent.obtain(
+                AccessibilityEvent.TYPE_WINDOW_CONTENT_CHANGED);
+        mHost.onInitializeAccessibilityEvent(changed);
+        changed.setContentChangeTypes(AccessibilityEvent.CONTENT_CHANGE_TYPE_SUBTREE);
+        parent.requestSendAccessibilityEvent(mHost, changed);
+    }
+
+    private void sendEvent(int virtualViewId, int eventType) {
+        AccessibilityEvent event = obtainEvent(virtualViewId, eventType);
+        if (event != null) {
+            mHost.getParent().requestSendAccessibilityEvent(mHost, event);
+        }
+    }
+
+    /**
+     * @return an event of the given type from the given field, or null if accessibility is off or
+     * the host isn't attached, so there is nothing to send it to.
+     */
+    private AccessibilityEvent obtainEvent(int virtualViewId, int eventType) {
+        final Context context = mHost.getContext();
+        final AccessibilityManager manager = (AccessibilityManager) context.getSystemService(
+                Context.ACCESSIBILITY_SERVICE);
+        if ((manager == null) || (!manager.isEnabled()) || (mHost.getParent() == null)) {
+            return null;
+        }
+
+        AccessibilityEvent event = AccessibilityEvent.obtain(eventType);
+        event.setSource(mHost, virtualViewId);
+        event.setPackageName(context.getPackageName());
+        event.setClassName(EditText.class.getName());
+        event.setContentDescription(context.getString(DESCRIPTIONS[virtualViewId]));
+        event.setEnabled(mHost.isEnabled());
+        event.setPassword(virtualViewId == VIRTUAL_CVC);
+        return event;
+    }
+
+    private static String formatExpiry(int month, int year) {
+        if (month == 0) {
+            return "";
+        }
+        StringBuilder expiry = new StringBuilder(5);
+        expiry.append(month / 10).append(month % 10).append('/');
+        if (year != 0) {
+            expiry.append(year / 10).append(year % 10);
+        }
+        return expiry.toString();
+    }
+}
@@ -0,0 +1,864 @@
+package com.rethoughtsolutions.swipecardentry;
+
+
+import java.util.Calendar;
+import java.util.regex.Pattern;
+
+/**
+ * The entry rules and editable state behind {@link SwipeCardEntry}: the number, expiry and CVC as
+ * entered, and the mode & card type they put the entry in. It has no drawing or Android
+ * dependencies, so the same logic the view runs can also be driven by tests, trace replays and
+ * benchmarks on a plain JVM. Not thread safe, a view only touches it on the main thread.
+ */
+final class CardInput {
+
+    static final String CVC_HINT = "CVC";
+
+    static final String AMEX_CVC_HINT = "4DBC";
+
+    enum Mode {
+        NUMBER,
+        EXPIRY_MONTH,
+        EXPIRY_YEAR,
+        CVC
+    }
+
+    enum CardType {
+        UNKNOWN("", 16, new int[]{}, CVC_HINT),
+        VISA("^4[0-9]$", 16, new int[]{4, 8, 12}, CVC_HINT),
+        MASTERCARD("^5[1-5]$", 16, new int[]{4, 8, 12}, CVC_HINT),
+        AMEX("^3[47]$", 15, new int[]{4, 10}, AMEX_CVC_HINT);
+
+        private Pattern mPartial;
+
+        private int mLength;
+
+        private int mCVCLength;
+
+        private int mBreaks[];
+
+        private String mCVCHint;
+
+        CardType(String guess, int length, int[] breaks, String cvcHint) {
+            mPartial = Pattern.compile(guess);
+            mLength = length;
+            mBreaks = breaks;
+            mCVCLength = cvcHint.length();
+            mCVCHint = cvcHint;
+        }
+
+        boolean guess(CharSequence match) {
+            return mPartial.matcher(match).matches();
+        }
+
+        boolean isCorrectLength(int length) {
+            return mLength == length;
+        }
+
+        boolean hasBreakAt(int index) {
+            for (int num : mBreaks) {
+                if (num == index) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        int getLength() {
+            return mLength;
+        }
+
+        int getLastBreak() {
+            return mBreaks[mBreaks.length - 1];
+        }
+
+        int getCVCLength() {
+            return mCVCLength;
+        }
+
+        String getCVCHint() {
+            return mCVCHint;
+        }
+
+        /**
+         * Validates the credit card number using the Luhn algorithm, returns true if valid.
+         *
+         * @param number the number to validate.
+         * @return true if valid.
+         */
+        boolean validateNumber(CharSequence number) {
+            int sum = 0;
+            final int size = number.length();
+            final int checkDigit = number.charAt(size - 1) - '0';
+
+            boolean doubleDigit = true;
+
+            for (int index = size - 1; --index >= 0; doubleDigit = !doubleDigit) {
+                int digit = number.charAt(index) - '0';
+
+                if (doubleDigit) {
+                    digit *= 2;
+
+                    if (digit > 9) {
+                        //sum the two digits together,
+                        //the first is always 1 as the highest
+                        // double will be 18
+                        digit = 1 + (digit % 10);
+                    }
+                }
+                sum += digit;
+            }
+
+            return ((sum + checkDigit) % 10) == 0;
+        }
+    }
+
+    /**
+     * The entry rules (card type guessing, number lengths & breaks, valid months, CVC lengths)
+     * compiled into a transition table indexed by input state and column, a digit or
+     * COLUMN_DELETE, so a keystroke is one lookup plus an action. A state is a position within a
+     * field for a card type, e.g. the 5th digit of a VISA number or the first month digit of a
+     * MASTERCARD, and each transition packs the next state above an ACTION_* code and FLAG_* bits.
+     */
+    private static final class Transitions {
+
+        static final int COLUMN_DELETE = 10;
+
+        static final int ACTION_IGNORE = 0;
+
+        static final int ACTION_APPEND_NUMBER = 1;
+
+        static final int ACTION_COMPLETE_NUMBER = 2;
+
+        static final int ACTION_REJECT_NUMBER = 3;
+
+        static final int ACTION_APPEND_MONTH = 4;
+
+        static final int ACTION_COMPLETE_MONTH = 5;
+
+        static final int ACTION_APPEND_YEAR = 6;
+
+        static final int ACTION_COMPLETE_YEAR = 7;
+
+        static final int ACTION_APPEND_CVC = 8;
+
+        static final int ACTION_POP_NUMBER = 9;
+
+        static final int ACTION_POP_MONTH = 10;
+
+        static final int ACTION_POP_SEPARATOR = 11;
+
+        static final int ACTION_POP_YEAR = 12;
+
+        static final int ACTION_POP_CVC = 13;
+
+        static final int ACTION_MASK = 0xF;
+
+        /**
+         * The digit appended/removed has a break in the formatted number after it.
+         */
+        static final int FLAG_BREAK = 1 << 4;
+
+        /**
+         * The next state depends on the entered text, not just the current state, so is only a
+         * placeholder for its mode & card type and must be resolved once the action is applied.
+         */
+        static final int FLAG_RESOLVE = 1 << 5;
+
+        static final int STATE_EMPTY = 0;
+
+        private static final int STATE_FIRST_DIGIT = 1;
+
+        private static final int STATE_UNKNOWN = STATE_FIRST_DIGIT + 10;
+
+        private static final int STATE_SHIFT = 6;
+
+        private static final int COLUMNS = 11;
+
+        private static final int MONTHS = 12;
+
+        //the first digits that can start a valid month, 0 and 1
+        private static final int MONTH_FIRST_DIGITS = (MONTHS / 10) + 1;
+
+        private static final int[] NUMBER_STATES = new int[CardType.values().length];
+
+        private static final int[] MONTH_STATES = new int[CardType.values().length];
+
+        private static final int[] YEAR_STATES = new int[CardType.values().length];
+
+        private static final int[] CVC_STATES = new int[CardType.values().length];
+
+        private static final Mode[] MODES;
+
+        private static final CardType[] CARD_TYPES;
+
+        private static final short[] TABLE;
+
+        static {
+            int count = STATE_UNKNOWN + 1;
+            for (CardType type : CardType.values()) {
+                if (type == CardType.UNKNOWN) {
+                    continue;
+                }
+                final int index = type.ordinal();
+                //2 digits up to the full length, plus one for longer numbers from setNumber
+                NUMBER_STATES[index] = count;
+                count += type.mLength;
+                MONTH_STATES[index] = count;
+                count += 1 + MONTH_FIRST_DIGITS;
+                YEAR_STATES[index] = count;
+                count += 2;
+                CVC_STATES[index] = count;
+                count += type.mCVCLength + 1;
+            }
+
+            MODES = new Mode[count];
+            CARD_TYPES = new CardType[count];
+            TABLE = new short[count * COLUMNS];
+
+            //the number, before the card type is known
+            addState(STATE_EMPTY, Mode.NUMBER, CardType.UNKNOWN);
+            for (int first = 0; first <= 9; first++) {
+                final int state = STATE_FIRST_DIGIT + first;
+                addState(state, Mode.NUMBER, CardType.UNKNOWN);
+                put(STATE_EMPTY, first, state, ACTION_APPEND_NUMBER);
+                put(state, COLUMN_DELETE, STATE_EMPTY, ACTION_POP_NUMBER);
+
+                for (int second = 0; second <= 9; second++) {
+                    CardType type = guessCardType(new String(new char[]{
+                            (char) ('0' + first), (char) ('0' + second)}));
+                    if (type == CardType.UNKNOWN) {
+                        put(state, second, STATE_UNKNOWN, ACTION_REJECT_NUMBER);
+                    } else {
+                        put(state, second, getNumberState(type, 2),
+                                ACTION_APPEND_NUMBER | getBreak(type, 2));
+                    }
+                }
+            }
+            addState(STATE_UNKNOWN, Mode.NUMBER, CardType.UNKNOWN);
+            put(STATE_UNKNOWN, COLUMN_DELETE, STATE_FIRST_DIGIT, ACTION_POP_NUMBER | FLAG_RESOLVE);
+
+            for (CardType type : CardType.values()) {
+                if (type != CardType.UNKNOWN) {
+                    addCardType(type);
+                }
+            }
+        }
+
+        private static void addCardType(CardType type) {
+            final int length = type.mLength;
+            for (int digits = 2; digits <= length + 1; digits++) {
+                final int state = getNumberState(type, digits);
+                addState(state, Mode.NUMBER, type);
+                if (digits > length) {
+                    //too long, only possible through setNumber
+                    putDigits(state, state, ACTION_APPEND_NUMBER);
+                    put(state, COLUMN_DELETE, state, ACTION_POP_NUMBER | FLAG_RESOLVE);
+                    continue;
+                }
+
+                if (digits == length - 1) {
+                    putDigits(state, state + 1, ACTION_COMPLETE_NUMBER | getBreak(type, length));
+                } else if (digits < length) {
+                    putDigits(state, state + 1, ACTION_APPEND_NUMBER | getBreak(type, digits + 1));
+                } else {
+                    //only reached without an error by deleting back from a longer number, which
+                    //isn't validated again
+                    putDigits(state, state + 1, ACTION_APPEND_NUMBER);
+                }
+                if (digits == 2) {
+                    put(state, COLUMN_DELETE, STATE_FIRST_DIGIT, ACTION_POP_NUMBER | FLAG_RESOLVE);
+                } else {
+                    put(state, COLUMN_DELETE, state - 1,
+                            ACTION_POP_NUMBER | getBreak(type, digits));
+                }
+            }
+
+            final int month = MONTH_STATES[type.ordinal()];
+            final int year = YEAR_STATES[type.ordinal()];
+            addState(month, Mode.EXPIRY_MONTH, type);
+            put(month, COLUMN_DELETE, getNumberState(type, length - 1),
+                    ACTION_POP_NUMBER | getBreak(type, length));
+            for (int first = 0; first < MONTH_FIRST_DIGITS; first++) {
+                final int state = month + 1 + first;
+                addState(state, Mode.EXPIRY_MONTH, type);
+                put(month, first, state, ACTION_APPEND_MONTH);
+                put(state, COLUMN_DELETE, month, ACTION_POP_MONTH);
+                for (int second = 0; second <= 9; second++) {
+                    final int value = (first * 10) + second;
+                    if ((value >= 1) && (value <= MONTHS)) {
+                        put(state, second, year, ACTION_COMPLETE_MONTH);
+                    }
+                }
+            }
+
+            final int cvc = CVC_STATES[type.ordinal()];
+            addState(year, Mode.EXPIRY_YEAR, type);
+            put(year, COLUMN_DELETE, month + 1, ACTION_POP_SEPARATOR | FLAG_RESOLVE);
+            //years starting with 0 have already passed
+            for (int digit = 1; digit <= 9; digit++) {
+                put(year, digit, year + 1, ACTION_APPEND_YEAR);
+            }
+            addState(year + 1, Mode.EXPIRY_YEAR, type);
+            put(year + 1, COLUMN_DELETE, year, ACTION_POP_YEAR);
+            putDigits(year + 1, cvc, ACTION_COMPLETE_YEAR);
+
+            for (int digits = 0; digits <= type.mCVCLength; digits++) {
+                final int state = cvc + digits;
+                addState(state, Mode.CVC, type);
+                if (digits < type.mCVCLength) {
+                    putDigits(state, state + 1, ACTION_APPEND_CVC);
+                }
+                if (digits == 0) {
+                    put(state, COLUMN_DELETE, year + 1, ACTION_POP_YEAR);
+                } else {
+                    put(state, COLUMN_DELETE, state - 1, ACTION_POP_CVC);
+                }
+            }
+        }
+
+        /**
+         * Adds a state, ignoring every column until a transition is put in.
+         */
+        private static void addState(int state, Mode mode, CardType type) {
+            MODES[state] = mode;
+            CARD_TYPES[state] = type;
+            for (int column = 0; column < COLUMNS; column++) {
+                put(state, column, state, ACTION_IGNORE);
+            }
+        }
+
+        private static void put(int state, int column, int next, int action) {
+            TABLE[(state * COLUMNS) + column] = (short) ((next << STATE_SHIFT) | action);
+        }
+
+        private static void putDigits(int state, int next, int action) {
+            for (int digit = 0; digit <= 9; digit++) {
+                put(state, digit, next, action);
+            }
+        }
+
+        private static int getBreak(CardType type, int digits) {
+            return type.hasBreakAt(digits) ? FLAG_BREAK : 0;
+        }
+
+        static int lookup(int state, int column) {
+            return TABLE[(state * COLUMNS) + column];
+        }
+
+        static int getNextState(int transition) {
+            return transition >>> STATE_SHIFT;
+        }
+
+        static Mode getMode(int state) {
+            return MODES[state];
+        }
+
+        static CardType getCardType(int state) {
+            return CARD_TYPES[state];
+        }
+
+        /**
+         * @return the state for a number of at least 2 digits.
+         */
+        static int getNumberState(CardType type, int digits) {
+            if (type == CardType.UNKNOWN) {
+                return STATE_UNKNOWN;
+            }
+            return NUMBER_STATES[type.ordinal()] + Math.min(digits, type.mLength + 1) - 2;
+        }
+
+        static int getFirstDigitState(int digit) {
+            return STATE_FIRST_DIGIT + digit;
+        }
+
+        static int getMonthState(CardType type, int firstDigit) {
+            return MONTH_STATES[type.ordinal()] + ((firstDigit < 0) ? 0 : 1 + firstDigit);
+        }
+
+        static int getYearState(CardType type, int digits) {
+            return YEAR_STATES[type.ordinal()] + digits;
+        }
+
+        static int getCVCState(CardType type, int digits) {
+            return CVC_STATES[type.ordinal()] + Math.min(digits, type.mCVCLength);
+        }
+    }
+
+    private Mode mMode = Mode.NUMBER;
+
+    private CardType mCardType = CardType.UNKNOWN;
+
+    /**
+     * The position in the {@link Transitions} table.
+     */
+    private int mInputState = Transitions.STATE_EMPTY;
+
+    private boolean mCompleted = false;
+
+    private boolean mError = false;
+
+    private final StringBuilder mNumber = new StringBuilder();
+
+    private final StringBuilder mNumberFormatted = new StringBuilder();
+
+    private final StringBuilder mMonth = new StringBuilder();
+
+    private final StringBuilder mYear = new StringBuilder();
+
+    private final StringBuilder mExpiryFormatted = new StringBuilder();
+
+    private final StringBuilder mCVC = new StringBuilder();
+
+    private CardNumberCheck mNumberCheck;
+
+    private KeystrokeTrace mTrace;
+
+    /**
+     * Replaces the current number check (if any) with the given check.
+     *
+     * @param check the new check (or null).
+     * @return the old check.
+     */
+    CardNumberCheck setNumberCheck(CardNumberCheck check) {
+        CardNumberCheck oldCheck = mNumberCheck;
+        mNumberCheck = check;
+        return oldCheck;
+    }
+
+    /**
+     * Replaces the current keystroke trace (if any) with the given trace, the current state and
+     * then every digit, delete and number set is recorded into it.
+     *
+     * @param trace the trace to record into (or null to stop recording).
+     * @return the old trace.
+     */
+    KeystrokeTrace setTrace(KeystrokeTrace trace) {
+        KeystrokeTrace oldTrace = mTrace;
+        mTrace = trace;
+        if (trace != null) {
+            //so a replay starts from wherever the entry was
+            trace.start(this);
+        }
+        return oldTrace;
+    }
+
+    /**
+     * Clears CVC, Expiry and Number and sets the number to the digits in the given text, moving on
+     * to the expiry month if it is valid. Anything other than digits (spaces, dashes) is ignored,
+     * as are any digits past {@link CardNumber#MAX_LENGTH}.
+     *
+     * @param number the number.
+     */
+    void setNumber(CharSequence number) {
+        if (mTrace != null) {
+            mTrace.recordNumber(number);
+        }
+        mNumber.setLength(0);
+        mMonth.setLength(0);
+        mYear.setLength(0);
+        mCVC.setLength(0);
+        mNumberFormatted.setLength(0);
+        mExpiryFormatted.setLength(0);
+
+        mCardType = CardType.UNKNOWN;
+        mMode = Mode.NUMBER;
+        mError = false;
+        final int length = number.length();
+        for (int index = 0; (index < length) && (mNumber.length() < CardNumber.MAX_LENGTH);
+                index++) {
+            char digit = number.charAt(index);
+            if ((digit >= '0') && (digit <= '9')) {
+                mNumber.append(digit);
+            }
+        }
+
+        mNumberFormatted.append(mNumber);
+
+        if (mNumber.length() >= 2) {
+            CharSequence firstTwoDigits = mNumber.subSequence(0, 2);
+            mCardType = guessCardType(firstTwoDigits);
+            if (mCardType == CardType.UNKNOWN) {
+                mNumber.setLength(2);
+                mNumberFormatted.setLength(2);
+                mError = true;
+            }
+        }
+
+        for (int index = mCardType.mBreaks.length; --index >= 0; ) {
+            int space = mCardType.mBreaks[index];
+            if (mNumberFormatted.length() > space) {
+                mNumberFormatted.insert(space, ' ');
+            }
+        }
+
+        if ((!mError) && (isBlocked(false))) {
+            mError = true;
+        } else if (mCardType.isCorrectLength(mNumber.length())) {
+            validateNumber();
+        }
+        mInputState = resolveInputState(mMode, mCardType);
+
+        checkIsCompleted();
+    }
+
+    /**
+     * Applies a typed digit, ignored while the number is in error.
+     *
+     * @param digit the digit (0 - 9).
+     * @return true if the digit moved the entry on, false if it was rejected or ignored.
+     */
+    boolean applyDigit(int digit) {
+        if (mTrace != null) {
+            mTrace.recordDigit(digit);
+        }
+        if (mError) {
+            return false;
+        }
+        final int state = mInputState;
+        applyTransition(digit);
+        return mInputState != state;
+    }
+
+    /**
+     * Applies a delete, removing the last digit entered (going back a field if the current one
+     * is empty) and clearing any error, unless the number left is still rejected by the check.
+     */
+    void applyDelete() {
+        if (mTrace != null) {
+            mTrace.recordDelete();
+        }
+        applyTransition(Transitions.COLUMN_DELETE);
+        //a blocked prefix stays an error until enough of it has been deleted
+        mError = (mMode == Mode.NUMBER) && (isBlocked(false));
+        checkIsCompleted();
+    }
+
+    /**
+     * Sets the number, then feeds the expiry & CVC through as if typed, stopping at the first
+     * rejected digit. The expiry & CVC are only filled in if the number is accepted.
+     *
+     * @param number      the number, as for {@link #setNumber(CharSequence)}.
+     * @param expiryMonth the expiry month (1 - 12), or 0 to leave the expiry & CVC empty.
+     * @param expiryYear  the expiry year, either all 4 digits or just the last 2.
+     * @param cvc         the CVC (or null).
+     */
+    void fill(CharSequence number, int expiryMonth, int expiryYear, CharSequence cvc) {
+        setNumber(number);
+        if ((mMode == Mode.NUMBER) || (expiryMonth < 1) || (expiryMonth > 12)) {
+            return;
+        }
+
+        final int year = expiryYear % 100;
+        if ((applyDigit(expiryMonth / 10)) && (applyDigit(expiryMonth % 10))
+                && (applyDigit(year / 10)) && (applyDigit(year % 10)) && (cvc != null)) {
+            for (int index = 0; index < cvc.length(); index++) {
+                char digit = cvc.charAt(index);
+                if ((digit >= '0') && (digit <= '9') && (!applyDigit(digit - '0'))) {
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Restores previously saved state, as returned by the getters.
+     */
+    void restore(Mode mode, CardType cardType, boolean completed, boolean error,
+            CharSequence number, CharSequence numberFormatted, CharSequence month,
+            CharSequence year, CharSequence expiryFormatted, CharSequence cvc) {
+        mMode = mode;
+        mCardType = cardType;
+        mCompleted = completed;
+        mError = error;
+        replace(mNumber, number);
+        replace(mNumberFormatted, numberFormatted);
+        replace(mMonth, month);
+        replace(mYear, year);
+        replace(mExpiryFormatted, expiryFormatted);
+        replace(mCVC, cvc);
+        mInputState = resolveInputState(mMode, mCardType);
+    }
+
+    Mode getMode() {
+        return mMode;
+    }
+
+    CardType getCardType() {
+        return mCardType;
+    }
+
+    boolean isError() {
+        return mError;
+    }
+
+    boolean isCompleted() {
+        return mCompleted;
+    }
+
+    /**
+     * @return the number's digits, only valid until the next change.
+     */
+    CharSequence getNumber() {
+        return mNumber;
+    }
+
+    /**
+     * @return the number with breaks, only valid until the next change.
+     */
+    CharSequence getNumberFormatted() {
+        return mNumberFormatted;
+    }
+
+    /**
+     * @return the expiry month's digits, only valid until the next change.
+     */
+    CharSequence getMonth() {
+        return mMonth;
+    }
+
+    /**
+     * @return the expiry year's digits, only valid until the next change.
+     */
+    CharSequence getYear() {
+        return mYear;
+    }
+
+    /**
+     * @return the expiry as shown (MM/YY), only valid until the next change.
+     */
+    CharSequence getExpiryFormatted() {
+        return mExpiryFormatted;
+    }
+
+    /**
+     * @return the CVC's digits, only valid until the next change.
+     */
+    CharSequence getCVC() {
+        return mCVC;
+    }
+
+    /**
+     * @return the expiry month (1 >= expiry month >= 12), or 0 if not set.
+     */
+    int getExpiryMonth() {
+        if (mMode.ordinal() > Mode.EXPIRY_MONTH.ordinal()) {
+            return (10 * (mMonth.charAt(0) - '0')) + (mMonth.charAt(1) - '0');
+        }
+        return 0;
+    }
+
+    /**
+     * @return the last 2 digits of the expiry year, or 0 if not set.
+     */
+    int getExpiryYear() {
+        if (mMode.ordinal() > Mode.EXPIRY_YEAR.ordinal()) {
+            return (10 * (mYear.charAt(0) - '0')) + (mYear.charAt(1) - '0');
+        }
+        return 0;
+    }
+
+    /**
+     * Looks up the transition from the current input state for the given column (a digit or
+     * {@link Transitions#COLUMN_DELETE}), and applies it.
+     */
+    private void applyTransition(int column) {
+        final int transition = Transitions.lookup(mInputState, column);
+        int state = applyAction(transition, column);
+        if ((transition & Transitions.FLAG_RESOLVE) != 0) {
+            state = resolveInputState(Transitions.getMode(state), Transitions.getCardType(state));
+        }
+
+        mInputState = state;
+        mMode = Transitions.getMode(state);
+        mCardType = Transitions.getCardType(state);
+    }
+
+    /**
+     * Applies the action of a transition to the editable state.
+     *
+     * @return the state to move to, normally the transition's next state.
+     */
+    private int applyAction(int transition, int digit) {
+        final int next = Transitions.getNextState(transition);
+        final boolean hasBreak = (transition & Transitions.FLAG_BREAK) != 0;
+        final char digitChar = (char) ('0' + digit);
+
+        switch (transition & Transitions.ACTION_MASK) {
+            case Transitions.ACTION_APPEND_NUMBER:
+                if (mNumber.length() == CardNumber.MAX_LENGTH) {
+                    //only reachable by typing on after a number too long for its card type
+                    return mInputState;
+                }
+                appendNumberDigit(digitChar, hasBreak);
+                if (isBlocked(false)) {
+                    mError = true;
+                }
+                return next;
+            case Transitions.ACTION_COMPLETE_NUMBER:
+                appendNumberDigit(digitChar, hasBreak);
+                if (isBlocked(false)) {
+                    mError = true;
+                    return next;
+                }
+                validateNumber();
+                return (mError) ? next : Transitions.getMonthState(mCardType, -1);
+            case Transitions.ACTION_REJECT_NUMBER:
+                appendNumberDigit(digitChar, hasBreak);
+                mError = true;
+                return next;
+            case Transitions.ACTION_APPEND_MONTH:
+                mMonth.append(digitChar);
+                mExpiryFormatted.append(digitChar);
+                return next;
+            case Transitions.ACTION_COMPLETE_MONTH:
+                mMonth.append(digitChar);
+                mExpiryFormatted.append(digitChar);
+                mExpiryFormatted.append('/');
+                return next;
+            case Transitions.ACTION_APPEND_YEAR:
+                mYear.append(digitChar);
+                mExpiryFormatted.append(digitChar);
+                return next;
+            case Transitions.ACTION_COMPLETE_YEAR:
+                if (hasExpired((10 * (mYear.charAt(0) - '0')) + digit)) {
+                    return mInputState;
+                }
+                mYear.append(digitChar);
+                mExpiryFormatted.append(digitChar);
+                return next;
+            case Transitions.ACTION_APPEND_CVC:
+                mCVC.append(digitChar);
+                checkIsCompleted();
+                return next;
+            case Transitions.ACTION_POP_NUMBER:
+                removeLastChar(mNumber);
+                removeLastChar(mNumberFormatted);
+                if (hasBreak) {
+                    removeLastChar(mNumberFormatted);
+                }
+                return next;
+            case Transitions.ACTION_POP_SEPARATOR:
+                removeLastChar(mExpiryFormatted);
+                //fall through, the last digit of the month goes with the separator
+            case Transitions.ACTION_POP_MONTH:
+                removeLastChar(mMonth);
+                removeLastChar(mExpiryFormatted);
+                return next;
+            case Transitions.ACTION_POP_YEAR:
+                removeLastChar(mYear);
+                removeLastChar(mExpiryFormatted);
+                return next;
+            case Transitions.ACTION_POP_CVC:
+                removeLastChar(mCVC);
+                return next;
+            default:
+                return next;
+        }
+    }
+
+    /**
+     * Works out the input state from the entered text, for when it isn't known from the previous
+     * state alone (setNumber, restoring, and deleting back to a digit that picked the state).
+     */
+    private int resolveInputState(Mode mode, CardType type) {
+        switch (mode) {
+            case NUMBER:
+                final int length = mNumber.length();
+                if (length == 0) {
+                    return Transitions.STATE_EMPTY;
+                } else if (length == 1) {
+                    return Transitions.getFirstDigitState(mNumber.charAt(0) - '0');
+                }
+                return Transitions.getNumberState(type, length);
+            case EXPIRY_MONTH:
+                return Transitions.getMonthState(type,
+                        (mMonth.length() == 0) ? -1 : mMonth.charAt(0) - '0');
+            case EXPIRY_YEAR:
+                return Transitions.getYearState(type, mYear.length());
+            default:
+                return Transitions.getCVCState(type, mCVC.length());
+        }
+    }
+
+    private void appendNumberDigit(char digit, boolean hasBreak) {
+        mNumber.append(digit);
+        mNumberFormatted.append(digit);
+        if (hasBreak) {
+            mNumberFormatted.append(' ');
+        }
+    }
+
+    /**
+     * @return true if the entered month in the given (2 digit) year is before this month.
+     */
+    private boolean hasExpired(int year) {
+        Calendar calendar = Calendar.getInstance();
+        int actualYear = calendar.get(Calendar.YEAR);
+        int enteredYear = 2000 + year;
+        if (actualYear != enteredYear) {
+            return actualYear > enteredYear;
+        }
+
+        int actualMonth = calendar.get(Calendar.MONTH) + 1;
+        int enteredMonth = (10 * (mMonth.charAt(0) - '0')) + (mMonth.charAt(1) - '0');
+        return actualMonth > enteredMonth;
+    }
+
+    /**
+     * Runs the number check (if any) once enough digits have been entered.
+     *
+     * @param complete true if the number is the correct length for the card type.
+     * @return true if the number has been rejected.
+     */
+    private boolean isBlocked(boolean complete) {
+        if ((mNumberCheck == null) || (mNumber.length() < CardNumberCheck.MIN_LENGTH)) {
+            return false;
+        }
+        return mNumberCheck.isBlocked(CardNumber.packHigh(mNumber), CardNumber.packLow(mNumber),
+                complete);
+    }
+
+    private void validateNumber() {
+        if ((mCardType.validateNumber(mNumber)) && (!isBlocked(true))) {
+            mMode = Mode.EXPIRY_MONTH;
+        } else {
+            mError = true;
+        }
+    }
+
+    private void checkIsCompleted() {
+        mCompleted = (mMode == Mode.CVC) && (mCVC.length() == mCardType.mCVCLength);
+    }
+
+    /**
+     * @return the most characters the formatted number can hold: {@link CardNumber#MAX_LENGTH}
+     * digits (as set by setNumber) with every break of the card type with the most.
+     */
+    static int getMaxNumberFormattedLength() {
+        int maxBreaks = 0;
+        for (CardType type : CardType.values()) {
+            maxBreaks = Math.max(maxBreaks, type.mBreaks.length);
+        }
+        return CardNumber.MAX_LENGTH + maxBreaks;
+    }
+
+    static CardType guessCardType(CharSequence cardType) {
+        for (CardType type : CardType.values()) {
+            if (type.guess(cardType)) {
+                return type;
+            }
+        }
+
+        return CardType.UNKNOWN;
+    }
+
+    private static void removeLastChar(StringBuilder text) {
+        text.setLength(text.length() - 1);
+    }
+
+    private static void replace(StringBuilder text, CharSequence value) {
+        text.setLength(0);
+        text.append(value);
+    }
+}
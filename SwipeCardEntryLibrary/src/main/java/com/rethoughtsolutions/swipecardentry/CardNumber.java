@@ -0,0 +1,305 @@
+package com.rethoughtsolutions.swipecardentry;
+
+
+/**
+ * Immutable card number (PAN) of up to 19 digits, packed as 4 bit digits into two longs rather
+ * than held as a String. Luhn validation, scheme detection, masking, equality and hashing all work
+ * straight on the packed form without allocating.
+ */
+public final class CardNumber {
+
+    /**
+     * Card schemes recognised from the leading digits, matching the schemes SwipeCardEntry accepts.
+     */
+    public enum Scheme {
+        UNKNOWN,
+        VISA,
+        MASTERCARD,
+        AMEX
+    }
+
+    /**
+     * The longest card number that can be held.
+     */
+    public static final int MAX_LENGTH = 19;
+
+    /**
+     * The empty card number.
+     */
+    public static final CardNumber EMPTY = new CardNumber(0L, 0L);
+
+    private static final int DIGITS_PER_LONG = 16;
+
+    private static final int LENGTH_MASK = 0x1F;
+
+    /**
+     * Digits 0-15, the first in the top nibble.
+     */
+    private final long mHigh;
+
+    /**
+     * Digits 16-18 in the top nibbles, and the length in the bottom 5 bits.
+     */
+    private final long mLow;
+
+    private CardNumber(long high, long low) {
+        mHigh = high;
+        mLow = low;
+    }
+
+    /**
+     * Packs the given digits into a card number.
+     *
+     * @param digits the digits, any formatting (spaces etc.) must already be stripped.
+     * @return the card number.
+     * @throws IllegalArgumentException if there are non digits or more than MAX_LENGTH digits.
+     */
+    public static CardNumber parse(CharSequence digits) {
+        final int length = digits.length();
+        if (length > MAX_LENGTH) {
+            throw new IllegalArgumentException("Card number too long: " + length + " digits");
+        }
+        if (length == 0) {
+            return EMPTY;
+        }
+
+        long high = 0;
+        long low = length;
+        for (int index = 0; index < length; index++) {
+            long digit = digits.charAt(index) - '0';
+            if ((digit < 0) || (digit > 9)) {
+                throw new IllegalArgumentException("Not a digit at " + index);
+            }
+            if (index < DIGITS_PER_LONG) {
+                high |= digit << shift(index);
+            } else {
+                low |= digit << shift(index - DIGITS_PER_LONG);
+            }
+        }
+        return new CardNumber(high, low);
+    }
+
+    /**
+     * Packs the first half of the given digits, as {@link #getPackedHigh()} of the number they
+     * parse to, without allocating.
+     *
+     * @param digits at most MAX_LENGTH digits, unchecked.
+     */
+    static long packHigh(CharSequence digits) {
+        final int length = Math.min(digits.length(), DIGITS_PER_LONG);
+        long high = 0;
+        for (int index = 0; index < length; index++) {
+            high |= (long) (digits.charAt(index) - '0') << shift(index);
+        }
+        return high;
+    }
+
+    /**
+     * Packs the second half of the given digits, as {@link #getPackedLow()} of the number they
+     * parse to, without allocating.
+     *
+     * @param digits at most MAX_LENGTH digits, unchecked.
+     */
+    static long packLow(CharSequence digits) {
+        final int length = digits.length();
+        long low = length;
+        for (int index = DIGITS_PER_LONG; index < length; index++) {
+            low |= (long) (digits.charAt(index) - '0') << shift(index - DIGITS_PER_LONG);
+        }
+        return low;
+    }
+
+    /**
+     * @param packedLow the value of {@link #getPackedLow()}.
+     * @return the number of digits of the packed number.
+     */
+    static int getLength(long packedLow) {
+        return (int) (packedLow & LENGTH_MASK);
+    }
+
+    /**
+     * Recreates a card number from its packed form.
+     *
+     * @param high the value of {@link #getPackedHigh()}.
+     * @param low  the value of {@link #getPackedLow()}.
+     * @return the card number.
+     */
+    public static CardNumber fromPacked(long high, long low) {
+        if ((low & LENGTH_MASK) > MAX_LENGTH) {
+            throw new IllegalArgumentException("Not a packed card number");
+        }
+        return new CardNumber(high, low);
+    }
+
+    /**
+     * @return the first half of the packed form, for compact storage.
+     */
+    public long getPackedHigh() {
+        return mHigh;
+    }
+
+    /**
+     * @return the second half of the packed form, for compact storage.
+     */
+    public long getPackedLow() {
+        return mLow;
+    }
+
+    /**
+     * @return the number of digits.
+     */
+    public int length() {
+        return (int) (mLow & LENGTH_MASK);
+    }
+
+    /**
+     * @param index the index of the digit, 0 being the first.
+     * @return the digit at the given index (0 - 9).
+     */
+    public int digitAt(int index) {
+        if ((index < 0) || (index >= length())) {
+            throw new IndexOutOfBoundsException("Index " + index + ", length " + length());
+        }
+        if (index < DIGITS_PER_LONG) {
+            return (int) ((mHigh >>> shift(index)) & 0xF);
+        }
+        return (int) ((mLow >>> shift(index - DIGITS_PER_LONG)) & 0xF);
+    }
+
+    /**
+     * Returns the number made up of the first digits, e.g. the BIN/IIN with a count of 6.
+     *
+     * @param count the number of leading digits, at most 9.
+     * @return the leading digits as a number, or -1 if there are not that many digits.
+     */
+    public int getPrefix(int count) {
+        if (count > length()) {
+            return -1;
+        }
+        int prefix = 0;
+        for (int index = 0; index < count; index++) {
+            prefix = (prefix * 10) + digitAt(index);
+        }
+        return prefix;
+    }
+
+    /**
+     * @return the last four digits as a number, or -1 if there are less than 4 digits.
+     */
+    public int getLastFour() {
+        final int length = length();
+        if (length < 4) {
+            return -1;
+        }
+        int lastFour = 0;
+        for (int index = length - 4; index < length; index++) {
+            lastFour = (lastFour * 10) + digitAt(index);
+        }
+        return lastFour;
+    }
+
+    /**
+     * Validates the card number using the Luhn algorithm, returns true if valid.
+     *
+     * @return true if valid.
+     */
+    public boolean isLuhnValid() {
+        final int length = length();
+        if (length == 0) {
+            return false;
+        }
+
+        int sum = 0;
+        boolean doubleDigit = false;
+        for (int index = length; --index >= 0; doubleDigit = !doubleDigit) {
+            int digit = digitAt(index);
+            if (doubleDigit) {
+                digit *= 2;
+                if (digit > 9) {
+                    digit -= 9;
+                }
+            }
+            sum += digit;
+        }
+        return (sum % 10) == 0;
+    }
+
+    /**
+     * @return the scheme guessed from the first two digits.
+     */
+    public Scheme getScheme() {
+        switch (getPrefix(2)) {
+            case 34:
+            case 37:
+                return Scheme.AMEX;
+            case 51:
+            case 52:
+            case 53:
+            case 54:
+            case 55:
+                return Scheme.MASTERCARD;
+            default:
+                return (getPrefix(1) == 4) ? Scheme.VISA : Scheme.UNKNOWN;
+        }
+    }
+
+    /**
+     * @return the number with everything but the first 6 and last 4 digits replaced by '*' (or
+     * all of it masked if it's too short to show both).
+     */
+    public String getMasked() {
+        final int length = length();
+        final char[] masked = new char[length];
+        final boolean showEnds = length > 10;
+        for (int index = 0; index < length; index++) {
+            if (showEnds && ((index < 6) || (index >= length - 4))) {
+                masked[index] = (char) ('0' + digitAt(index));
+            } else {
+                masked[index] = '*';
+            }
+        }
+        return new String(masked);
+    }
+
+    /**
+     * @return the full, unmasked digits.
+     */
+    public String getDigits() {
+        final int length = length();
+        final char[] digits = new char[length];
+        for (int index = 0; index < length; index++) {
+            digits[index] = (char) ('0' + digitAt(index));
+        }
+        return new String(digits);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof CardNumber)) {
+            return false;
+        }
+        CardNumber other = (CardNumber) o;
+        return (mHigh == other.mHigh) && (mLow == other.mLow);
+    }
+
+    @Override
+    public int hashCode() {
+        long hash = (mHigh * 31) + mLow;
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    /**
+     * @return the masked number, so card numbers don't end up in logs by accident.
+     */
+    @Override
+    public String toString() {
+        return getMasked();
+    }
+
+    private static int shift(int index) {
+        return 60 - (4 * index);
+    }
+}
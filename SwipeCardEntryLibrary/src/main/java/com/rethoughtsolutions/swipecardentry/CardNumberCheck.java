@@ -0,0 +1,28 @@
+package com.rethoughtsolutions.swipecardentry;
+
+
+/**
+ * Check run against the card number while it is being entered, before it is accepted, e.g. an
+ * offline blocklist of BINs and lost/stolen cards. It is called on the main thread for every
+ * keystroke, so it must answer quickly. With {@link SurfaceSwipeCardEntry} it is also called on
+ * the render thread for input submitted from other threads, so it must be thread safe as well.
+ */
+public interface CardNumberCheck {
+
+    /**
+     * The number of digits entered before the check is first run.
+     */
+    public static final int MIN_LENGTH = 6;
+
+    /**
+     * Called whenever the number changes once it has at least MIN_LENGTH digits, and once more
+     * when it is complete. The number is passed in its packed form, so entering a digit doesn't
+     * allocate, {@link CardNumber#fromPacked(long, long)} turns it back into a CardNumber.
+     *
+     * @param packedHigh the digits entered so far, as {@link CardNumber#getPackedHigh()}.
+     * @param packedLow  the digits entered so far, as {@link CardNumber#getPackedLow()}.
+     * @param complete   true if this is the whole number, of the correct length for its scheme.
+     * @return true to reject the number, marking it as an error.
+     */
+    public boolean isBlocked(long packedHigh, long packedLow, boolean complete);
+}
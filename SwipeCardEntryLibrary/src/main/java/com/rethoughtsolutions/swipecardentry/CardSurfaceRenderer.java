@@ -0,0 +1,206 @@
+package com.rethoughtsolutions.swipecardentry;
+
+
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.PorterDuff;
+import android.graphics.Paint;
+import android.graphics.drawable.Drawable;
+import android.os.Process;
+import android.os.SystemClock;
+import android.text.TextPaint;
+import android.view.SurfaceHolder;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Render thread backend for {@link SurfaceSwipeCardEntry}, drawing the card entry onto a surface
+ * from its own thread so typed digits show up without waiting on the main thread.
+ * <p/>
+ * The main thread hands over each {@link SwipeCardEntry.RenderSnapshot} through a single slot
+ * (every snapshot supersedes the last, so there is nothing to gain from queueing more) and wakes
+ * the render thread, which is the only consumer. Input submitted from other threads is handed to
+ * the render thread too, and applied to its own {@link SwipeCardEntry.RenderState} on top of the
+ * latest snapshot until the main thread has caught up.
+ */
+final class CardSurfaceRenderer implements SurfaceHolder.Callback, Runnable {
+
+    private static final long FRAME_INTERVAL = 16;
+
+    private final SurfaceHolder mHolder;
+
+    private final AtomicReference<SwipeCardEntry.RenderSnapshot> mSnapshot
+            = new AtomicReference<SwipeCardEntry.RenderSnapshot>();
+
+    private final AtomicBoolean mDirty = new AtomicBoolean(true);
+
+    private final SwipeCardEntry.RenderState mRenderState = new SwipeCardEntry.RenderState();
+
+    private volatile boolean mRunning = false;
+
+    private volatile Thread mThread;
+
+    private volatile TextPaint mTextPaint;
+
+    private volatile TextPaint mHintPaint;
+
+    private volatile TextPaint mErrorPaint;
+
+    private volatile Paint mBitmapPaint;
+
+    private volatile Drawable mBackground;
+
+    private volatile SwipeCardEntry.FrameObserver mFrameObserver;
+
+    CardSurfaceRenderer(SurfaceHolder holder) {
+        mHolder = holder;
+        holder.addCallback(this);
+    }
+
+    /**
+     * Takes copies of the card entry's paints, so the render thread never shares a paint with the
+     * main thread.
+     */
+    void setPaints(Paint textPaint, Paint hintPaint, Paint errorPaint, Paint bitmapPaint) {
+        mTextPaint = new TextPaint(textPaint);
+        mHintPaint = new TextPaint(hintPaint);
+        mErrorPaint = new TextPaint(errorPaint);
+        mBitmapPaint = new Paint(bitmapPaint);
+    }
+
+    /**
+     * Sets the background to draw behind each frame, as the surface punches through the window
+     * the card entry draws its own background into. Must be a copy only the render thread uses.
+     *
+     * @param background the render thread's copy of the background (or null).
+     */
+    void setBackground(Drawable background) {
+        mBackground = background;
+        mDirty.set(true);
+    }
+
+    void setFrameObserver(SwipeCardEntry.FrameObserver observer) {
+        mFrameObserver = observer;
+    }
+
+    /**
+     * Hands a new snapshot to the render thread, called on the main thread.
+     */
+    void publish(SwipeCardEntry.RenderSnapshot snapshot) {
+        mSnapshot.set(snapshot);
+        mDirty.set(true);
+        Thread thread = mThread;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * Hands input submitted from any thread to the render thread, to draw before the main thread
+     * has applied it. Dropped while not drawing, as the main thread's state is drawn on restarting.
+     */
+    void submitInput(SwipeCardEntry.QueuedInput input) {
+        Thread thread = mThread;
+        if (thread != null) {
+            mRenderState.submit(input);
+            LockSupport.unpark(thread);
+        }
+    }
+
+    @Override
+    public void surfaceCreated(SurfaceHolder holder) {
+        mRunning = true;
+        mDirty.set(true);
+        mThread = new Thread(this, "SwipeCardEntry render");
+        mThread.start();
+    }
+
+    @Override
+    public void surfaceChanged(SurfaceHolder holder, int format, int width, int height) {
+        publish(mSnapshot.get());
+    }
+
+    @Override
+    public void surfaceDestroyed(SurfaceHolder holder) {
+        //the surface must not be drawn to once this returns, so wait for the thread to stop
+        Thread thread = mThread;
+        mRunning = false;
+        mThread = null;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+            boolean interrupted = false;
+            while (thread.isAlive()) {
+                try {
+                    thread.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_URGENT_DISPLAY);
+
+        boolean cursorOn = false;
+        boolean sliding = false;
+        while (mRunning) {
+            //cleared before the snapshot is read, so a snapshot published in between is never
+            //missed, at worst it is drawn twice
+            final boolean dirty = mDirty.getAndSet(false);
+            SwipeCardEntry.RenderSnapshot snapshot = mSnapshot.get();
+            if (snapshot == null) {
+                LockSupport.park(this);
+                continue;
+            }
+
+            long now = SystemClock.uptimeMillis();
+            final boolean changed = mRenderState.update(snapshot, now, mTextPaint);
+            //only draw when something has actually changed since the last frame
+            if ((dirty) || (changed) || (sliding) || (mRenderState.isSliding(now))
+                    || (cursorOn != mRenderState.isCursorOn(now))) {
+                cursorOn = mRenderState.isCursorOn(now);
+                sliding = mRenderState.isSliding(now);
+                draw(snapshot, now);
+            }
+
+            long next = mRenderState.getNextChangeTime(now, FRAME_INTERVAL);
+            if (next == Long.MAX_VALUE) {
+                LockSupport.park(this);
+            } else {
+                LockSupport.parkNanos(this, (next - now) * 1000000L);
+            }
+        }
+    }
+
+    private void draw(SwipeCardEntry.RenderSnapshot snapshot, long now) {
+        Canvas canvas = mHolder.lockCanvas();
+        if (canvas == null) {
+            return;
+        }
+        try {
+            canvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
+            Drawable background = mBackground;
+            if (background != null) {
+                background.setState(snapshot.getDrawableState());
+                background.setBounds(0, 0, snapshot.getWidth(), snapshot.getHeight());
+                background.draw(canvas);
+            }
+            SwipeCardEntry.drawFrame(canvas, snapshot, mRenderState, now, mTextPaint, mHintPaint,
+                    mErrorPaint, mBitmapPaint);
+        } finally {
+            mHolder.unlockCanvasAndPost(canvas);
+        }
+
+        SwipeCardEntry.FrameObserver observer = mFrameObserver;
+        if (observer != null) {
+            observer.onFrameDrawn(mRenderState.getNumber());
+        }
+    }
+}
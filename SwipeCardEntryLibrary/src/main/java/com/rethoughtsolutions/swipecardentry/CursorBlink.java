@@ -0,0 +1,73 @@
+package com.rethoughtsolutions.swipecardentry;
+
+
+/**
+ * The cursor blink, worked out from a clock (the animation clock on the main thread, the frame
+ * time on the render thread) rather than toggled by a repeating timer. It stays in step with the
+ * slide, and only needs a wakeup at each phase change while the cursor can actually be seen.
+ */
+final class CursorBlink {
+
+    static final int BLINK_DURATION = 500;
+
+    /**
+     * Returned by {@link #getWakeupDelay(long, boolean, boolean)} when nothing needs scheduling.
+     */
+    static final long NO_WAKEUP = -1;
+
+    private boolean mBlinking = false;
+
+    private long mStart = 0;
+
+    /**
+     * Starts (or restarts) blinking, with the cursor shown from now.
+     */
+    void start(long now) {
+        mBlinking = true;
+        mStart = now;
+    }
+
+    void stop() {
+        mBlinking = false;
+    }
+
+    boolean isBlinking() {
+        return mBlinking;
+    }
+
+    long getStart() {
+        return mStart;
+    }
+
+    /**
+     * @return true if the cursor is in the visible half of its blink at the given time.
+     */
+    boolean isCursorOn(long now) {
+        return isCursorOn(mBlinking, mStart, now);
+    }
+
+    /**
+     * @param now     the current time.
+     * @param visible true if the field can be seen.
+     * @param sliding true while the slide animation runs, which redraws the cursor every frame.
+     * @return the delay until the cursor next changes phase, or {@link #NO_WAKEUP} if nothing
+     * needs redrawing until the blinking, visibility or slide changes.
+     */
+    long getWakeupDelay(long now, boolean visible, boolean sliding) {
+        if ((!mBlinking) || (!visible) || (sliding)) {
+            return NO_WAKEUP;
+        }
+        return getPhaseDelay(mStart, now);
+    }
+
+    static boolean isCursorOn(boolean blinking, long start, long now) {
+        return blinking && ((((now - start) / BLINK_DURATION) % 2) == 0);
+    }
+
+    /**
+     * @return the time from now until the next phase change of a blink started at start.
+     */
+    static long getPhaseDelay(long start, long now) {
+        return BLINK_DURATION - ((now - start) % BLINK_DURATION);
+    }
+}
@@ -0,0 +1,647 @@
+package com.rethoughtsolutions.swipecardentry;
+
+
+import com.rethoughtsolutions.swipecardentry.CardInput.CardType;
+import com.rethoughtsolutions.swipecardentry.CardInput.Mode;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+
+/**
+ * Compact binary recording of the input fed into a {@link SwipeCardEntry} (typed digits, deletes
+ * and numbers set by {@link SwipeCardEntry#setNumber(String)}, fill or a swipe), with timestamps,
+ * which can be written out, read back and replayed as fast as possible.
+ * <p/>
+ * A replay drives the entry logic on its own, without a view, so a corpus of traces can be run on
+ * a plain JVM as a regression check or a throughput benchmark. Each event is stored as a type
+ * byte, followed by the milliseconds since the previous event and the event payload, all as
+ * unsigned varints. The state of the entry when recording starts is recorded first, and replays
+ * start from it, so a trace can be started part way through entering a card. A trace is closed
+ * when it is replaced in the entry ({@link SwipeCardEntry#setKeystrokeTrace(KeystrokeTrace)}),
+ * which records the final state of the entry so that a replay can check it ended up in the same
+ * place.
+ */
+public class KeystrokeTrace {
+
+    /**
+     * Result of replaying one or more traces.
+     */
+    public static class ReplayResult {
+
+        private int mTraces;
+
+        private int mMismatches;
+
+        private long mEvents;
+
+        private long mElapsedNanos;
+
+        private long mAllocatedBytes = -1;
+
+        /**
+         * @return the number of traces replayed.
+         */
+        public int getTraceCount() {
+            return mTraces;
+        }
+
+        /**
+         * @return the number of traces whose final state did not match the recorded one.
+         */
+        public int getMismatchCount() {
+            return mMismatches;
+        }
+
+        /**
+         * @return the number of events fed into the entry.
+         */
+        public long getEventCount() {
+            return mEvents;
+        }
+
+        /**
+         * @return the time spent feeding events into the entry, in nanoseconds.
+         */
+        public long getElapsedNanos() {
+            return mElapsedNanos;
+        }
+
+        /**
+         * @return the bytes allocated while replaying, or -1 if the VM can't tell (it needs
+         * HotSpot's com.sun.management.ThreadMXBean, so always on Android).
+         */
+        public long getAllocatedBytes() {
+            return mAllocatedBytes;
+        }
+
+        /**
+         * @return the replay throughput in events per second.
+         */
+        public double getEventsPerSecond() {
+            if (mElapsedNanos == 0) {
+                return 0.0;
+            }
+            return (mEvents * 1000000000.0) / mElapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return "ReplayResult{traces=" + mTraces + ", mismatches=" + mMismatches + ", events="
+                    + mEvents + ", eventsPerSecond=" + (long) getEventsPerSecond()
+                    + ", allocatedBytes=" + mAllocatedBytes + "}";
+        }
+    }
+
+    private static final int MAGIC = 0x53435432; // "SCT2"
+
+    private static final int CORPUS_MAGIC = 0x53434331; // "SCC1"
+
+    private static final int EVENT_DIGIT = 1;
+
+    private static final int EVENT_DELETE = 2;
+
+    private static final int EVENT_NUMBER = 3;
+
+    private static final int EVENT_END = 4;
+
+    private static final int EVENT_START = 5;
+
+    private static final int FLAG_COMPLETED = 1;
+
+    private static final int FLAG_ERROR = 1 << 1;
+
+    private static final Mode[] MODES = Mode.values();
+
+    private static final CardType[] CARD_TYPES = CardType.values();
+
+    /**
+     * The number of strings in a start event: the number, formatted number, month, year,
+     * formatted expiry and CVC.
+     */
+    private static final int START_STRINGS = 6;
+
+    //HotSpot's per thread allocation counter, looked up reflectively as it isn't on Android
+    private static final Object THREAD_BEAN;
+
+    private static final Method ALLOCATED_BYTES;
+
+    static {
+        Object threadBean = null;
+        Method allocatedBytes = null;
+        try {
+            Class<?> beanClass = Class.forName("com.sun.management.ThreadMXBean");
+            threadBean = Class.forName("java.lang.management.ManagementFactory")
+                    .getMethod("getThreadMXBean").invoke(null);
+            if (beanClass.isInstance(threadBean)) {
+                allocatedBytes = beanClass.getMethod("getThreadAllocatedBytes", long.class);
+            }
+        } catch (Exception e) {
+            //not available, allocations aren't reported
+        }
+        THREAD_BEAN = threadBean;
+        ALLOCATED_BYTES = allocatedBytes;
+    }
+
+    /**
+     * The state a replay works in, reused from one trace to the next.
+     */
+    private static final class Replay {
+
+        private final CardInput mInput = new CardInput();
+
+        private final StringBuilder[] mStrings = new StringBuilder[START_STRINGS];
+
+        private final int[] mPosition = new int[1];
+
+        Replay(CardNumberCheck check) {
+            mInput.setNumberCheck(check);
+            for (int index = 0; index < mStrings.length; index++) {
+                mStrings[index] = new StringBuilder();
+            }
+        }
+    }
+
+    private byte[] mData;
+
+    private int mLength = 0;
+
+    private long mLastTimestamp = -1;
+
+    private boolean mFinished = false;
+
+    /**
+     * Creates an empty trace, ready for recording.
+     */
+    public KeystrokeTrace() {
+        mData = new byte[256];
+    }
+
+    private KeystrokeTrace(byte[] data, int length) {
+        mData = data;
+        mLength = length;
+        mFinished = true;
+    }
+
+    /**
+     * Reads a trace previously written with {@link #write(OutputStream)}.
+     *
+     * @param in the stream to read from, it is read to the end but not closed.
+     * @return the trace.
+     * @throws IOException if the stream can't be read or is not a trace.
+     */
+    public static KeystrokeTrace read(InputStream in) throws IOException {
+        byte[] data = readFully(in);
+        if ((data.length < 4) || (readInt(data, 0) != MAGIC)) {
+            throw new IOException("Not a keystroke trace");
+        }
+        byte[] trace = Arrays.copyOfRange(data, 4, data.length);
+        validate(trace, trace.length);
+        return new KeystrokeTrace(trace, trace.length);
+    }
+
+    /**
+     * Reads a corpus of traces previously written with
+     * {@link #writeCorpus(OutputStream, KeystrokeTrace...)}.
+     *
+     * @param in the stream to read from, it is read to the end but not closed.
+     * @return the traces.
+     * @throws IOException if the stream can't be read or is not a corpus.
+     */
+    public static KeystrokeTrace[] readCorpus(InputStream in) throws IOException {
+        byte[] data = readFully(in);
+        if ((data.length < 8) || (readInt(data, 0) != CORPUS_MAGIC)) {
+            throw new IOException("Not a keystroke trace corpus");
+        }
+        KeystrokeTrace[] corpus = new KeystrokeTrace[readInt(data, 4)];
+        int offset = 8;
+        for (int index = 0; index < corpus.length; index++) {
+            if (offset + 4 > data.length) {
+                throw new IOException("Truncated keystroke trace corpus");
+            }
+            int length = readInt(data, offset);
+            offset += 4;
+            if ((length < 0) || (offset + length > data.length)) {
+                throw new IOException("Truncated keystroke trace corpus");
+            }
+            byte[] trace = Arrays.copyOfRange(data, offset, offset + length);
+            validate(trace, length);
+            corpus[index] = new KeystrokeTrace(trace, length);
+            offset += length;
+        }
+        return corpus;
+    }
+
+    /**
+     * Writes this trace to the given stream.
+     *
+     * @param out the stream to write to, it is not closed.
+     * @throws IOException if the stream can't be written to.
+     */
+    public void write(OutputStream out) throws IOException {
+        writeInt(out, MAGIC);
+        out.write(mData, 0, mLength);
+    }
+
+    /**
+     * Writes a corpus of traces to the given stream, as a single file.
+     *
+     * @param out    the stream to write to, it is not closed.
+     * @param corpus the traces to write.
+     * @throws IOException if the stream can't be written to.
+     */
+    public static void writeCorpus(OutputStream out, KeystrokeTrace... corpus)
+            throws IOException {
+        writeInt(out, CORPUS_MAGIC);
+        writeInt(out, corpus.length);
+        for (KeystrokeTrace trace : corpus) {
+            writeInt(out, trace.mLength);
+            out.write(trace.mData, 0, trace.mLength);
+        }
+    }
+
+    /**
+     * Replays this trace without any delay between events.
+     *
+     * @return the result of the replay.
+     */
+    public ReplayResult replay() {
+        return replay((CardNumberCheck) null, this);
+    }
+
+    /**
+     * Replays this trace without any delay between events, checking the number as it is entered.
+     *
+     * @param check the number check the entry had while recording (or null).
+     * @return the result of the replay.
+     */
+    public ReplayResult replay(CardNumberCheck check) {
+        return replay(check, this);
+    }
+
+    /**
+     * Replays a corpus of traces one after the other, without any delay between events, and
+     * reports the combined throughput. The traces are fed into the entry logic on its own, so
+     * this can be called from any thread, or from a plain JVM.
+     *
+     * @param corpus the traces to replay.
+     * @return the combined result of the replays.
+     */
+    public static ReplayResult replay(KeystrokeTrace... corpus) {
+        return replay((CardNumberCheck) null, corpus);
+    }
+
+    /**
+     * Replays a corpus of traces as {@link #replay(KeystrokeTrace...)}, checking each number as it
+     * is entered. A check (e.g. a {@link BloomBlocklist}) isn't part of a trace, so sessions that
+     * were checked need the same check to end up in their recorded state.
+     *
+     * @param check  the number check the entry had while recording (or null).
+     * @param corpus the traces to replay.
+     * @return the combined result of the replays.
+     */
+    public static ReplayResult replay(CardNumberCheck check, KeystrokeTrace... corpus) {
+        ReplayResult result = new ReplayResult();
+        Replay replay = new Replay(check);
+
+        final long allocatedStart = getAllocatedBytes();
+        //the cost of reading the counter itself, taken off again below
+        final long allocatedOverhead = getAllocatedBytes() - allocatedStart;
+        for (KeystrokeTrace trace : corpus) {
+            long start = System.nanoTime();
+            boolean matched = trace.feed(replay, result);
+            result.mElapsedNanos += System.nanoTime() - start;
+            result.mTraces++;
+            if (!matched) {
+                result.mMismatches++;
+            }
+        }
+        if (allocatedStart >= 0) {
+            result.mAllocatedBytes = Math.max(0,
+                    getAllocatedBytes() - allocatedStart - (2 * allocatedOverhead));
+        }
+        return result;
+    }
+
+    /**
+     * Records the state of the given input as the one to replay from, if nothing has been
+     * recorded yet.
+     */
+    void start(CardInput input) {
+        if ((mFinished) || (mLength != 0)) {
+            return;
+        }
+        writeEventHeader(EVENT_START, now());
+        writeVarInt(input.getMode().ordinal());
+        writeVarInt(input.getCardType().ordinal());
+        writeVarInt((input.isCompleted() ? FLAG_COMPLETED : 0)
+                | (input.isError() ? FLAG_ERROR : 0));
+        writeString(input.getNumber());
+        writeString(input.getNumberFormatted());
+        writeString(input.getMonth());
+        writeString(input.getYear());
+        writeString(input.getExpiryFormatted());
+        writeString(input.getCVC());
+    }
+
+    /**
+     * Records the final state of the given input and stops recording further events.
+     */
+    void finish(CardInput input) {
+        finish(input.getNumber(), input.getExpiryMonth(), input.getExpiryYear(), input.getCVC(),
+                input.isCompleted());
+    }
+
+    /**
+     * Records the given final state and stops recording further events.
+     */
+    void finish(CharSequence number, int expiryMonth, int expiryYear, CharSequence cvc,
+            boolean completed) {
+        if (mFinished) {
+            return;
+        }
+        writeEventHeader(EVENT_END, now());
+        writeString(number);
+        writeVarInt(expiryMonth);
+        writeVarInt(expiryYear);
+        writeString(cvc);
+        writeVarInt(completed ? 1 : 0);
+        mFinished = true;
+    }
+
+    void recordDigit(int digit) {
+        recordDigit(digit, now());
+    }
+
+    void recordDigit(int digit, long timeMillis) {
+        if (mFinished) {
+            return;
+        }
+        writeEventHeader(EVENT_DIGIT, timeMillis);
+        writeVarInt(digit);
+    }
+
+    void recordDelete() {
+        recordDelete(now());
+    }
+
+    void recordDelete(long timeMillis) {
+        if (mFinished) {
+            return;
+        }
+        writeEventHeader(EVENT_DELETE, timeMillis);
+    }
+
+    void recordNumber(CharSequence number) {
+        recordNumber(number, now());
+    }
+
+    void recordNumber(CharSequence number, long timeMillis) {
+        if (mFinished) {
+            return;
+        }
+        writeEventHeader(EVENT_NUMBER, timeMillis);
+        writeString(number);
+    }
+
+    /**
+     * Feeds each event of this trace into the replay's input, from the recorded start state (or
+     * an empty entry), returns true if the final state matches the recorded one (or no final state
+     * was recorded). Reuses the replay's buffers, so doesn't allocate.
+     */
+    private boolean feed(Replay replay, ReplayResult result) {
+        final CardInput input = replay.mInput;
+        final StringBuilder number = replay.mStrings[0];
+        final int[] position = replay.mPosition;
+        input.setNumber("");
+        position[0] = 0;
+        while (position[0] < mLength) {
+            int type = mData[position[0]++];
+            readVarInt(position); // the timestamp, replays run flat out
+            switch (type) {
+                case EVENT_START:
+                    restore(input, replay.mStrings, position);
+                    break;
+                case EVENT_DIGIT:
+                    input.applyDigit(readVarInt(position));
+                    result.mEvents++;
+                    break;
+                case EVENT_DELETE:
+                    input.applyDelete();
+                    result.mEvents++;
+                    break;
+                case EVENT_NUMBER:
+                    number.setLength(0);
+                    readString(position, number);
+                    input.setNumber(number);
+                    result.mEvents++;
+                    break;
+                case EVENT_END:
+                    return matchString(position, input.getNumber())
+                            & (readVarInt(position) == input.getExpiryMonth())
+                            & (readVarInt(position) == input.getExpiryYear())
+                            & matchString(position, input.getCVC())
+                            & ((readVarInt(position) == 1) == input.isCompleted());
+                default:
+                    throw new IllegalStateException("Corrupt keystroke trace, event " + type);
+            }
+        }
+        return true;
+    }
+
+    private void restore(CardInput input, StringBuilder[] strings, int[] position) {
+        final Mode mode = MODES[readVarInt(position)];
+        final CardType cardType = CARD_TYPES[readVarInt(position)];
+        final int flags = readVarInt(position);
+        for (StringBuilder string : strings) {
+            string.setLength(0);
+            readString(position, string);
+        }
+        input.restore(mode, cardType, (flags & FLAG_COMPLETED) != 0, (flags & FLAG_ERROR) != 0,
+                strings[0], strings[1], strings[2], strings[3], strings[4], strings[5]);
+    }
+
+    /**
+     * Walks through every event of a trace read in, so a truncated or corrupt trace is rejected
+     * up front rather than failing part way through a replay.
+     */
+    private static void validate(byte[] data, int length) throws IOException {
+        int[] position = new int[1];
+        while (position[0] < length) {
+            final int start = position[0];
+            final int type = data[position[0]++];
+            checkVarInt(data, length, position); // the timestamp
+            switch (type) {
+                case EVENT_START:
+                    if ((start != 0) || (checkVarInt(data, length, position) >= MODES.length)
+                            || (checkVarInt(data, length, position) >= CARD_TYPES.length)) {
+                        throw new IOException("Corrupt keystroke trace start at " + start);
+                    }
+                    checkVarInt(data, length, position);
+                    for (int index = 0; index < START_STRINGS; index++) {
+                        checkString(data, length, position);
+                    }
+                    break;
+                case EVENT_DIGIT:
+                    if (checkVarInt(data, length, position) > 9) {
+                        throw new IOException("Corrupt keystroke trace digit at " + start);
+                    }
+                    break;
+                case EVENT_DELETE:
+                    break;
+                case EVENT_NUMBER:
+                    checkString(data, length, position);
+                    break;
+                case EVENT_END:
+                    checkString(data, length, position);
+                    checkVarInt(data, length, position);
+                    checkVarInt(data, length, position);
+                    checkString(data, length, position);
+                    checkVarInt(data, length, position);
+                    if (position[0] != length) {
+                        throw new IOException("Keystroke trace continues after its end");
+                    }
+                    break;
+                default:
+                    throw new IOException("Corrupt keystroke trace, event " + type + " at "
+                            + start);
+            }
+        }
+    }
+
+    /**
+     * Reads a varint, checking it is complete and fits in an int.
+     */
+    private static int checkVarInt(byte[] data, int length, int[] position) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            if (position[0] >= length) {
+                throw new IOException("Truncated keystroke trace");
+            }
+            int b = data[position[0]++];
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Corrupt keystroke trace varint at " + position[0]);
+    }
+
+    private static void checkString(byte[] data, int length, int[] position) throws IOException {
+        int stringLength = checkVarInt(data, length, position);
+        if ((stringLength < 0) || (stringLength > length - position[0])) {
+            throw new IOException("Truncated keystroke trace");
+        }
+        position[0] += stringLength;
+    }
+
+    private void writeEventHeader(int type, long timeMillis) {
+        long delta = (mLastTimestamp < 0) ? 0 : Math.max(0, timeMillis - mLastTimestamp);
+        mLastTimestamp = timeMillis;
+
+        ensureCapacity(1);
+        mData[mLength++] = (byte) type;
+        writeVarInt((int) Math.min(delta, Integer.MAX_VALUE));
+    }
+
+    private void writeString(CharSequence value) {
+        final int length = value.length();
+        writeVarInt(length);
+        ensureCapacity(length);
+        for (int index = 0; index < length; index++) {
+            //only digits & formatting are fed in, so a single byte per char is plenty
+            char c = value.charAt(index);
+            mData[mLength++] = (byte) ((c <= 0xFF) ? c : '?');
+        }
+    }
+
+    private void writeVarInt(int value) {
+        ensureCapacity(5);
+        while ((value & ~0x7F) != 0) {
+            mData[mLength++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        mData[mLength++] = (byte) value;
+    }
+
+    private void readString(int[] position, StringBuilder out) {
+        int length = readVarInt(position);
+        for (int index = 0; index < length; index++) {
+            out.append((char) (mData[position[0]++] & 0xFF));
+        }
+    }
+
+    /**
+     * Reads a string, returning true if it is the same as the given text.
+     */
+    private boolean matchString(int[] position, CharSequence text) {
+        int length = readVarInt(position);
+        boolean matched = (length == text.length());
+        for (int index = 0; index < length; index++) {
+            char c = (char) (mData[position[0]++] & 0xFF);
+            matched &= (index < text.length()) && (c == text.charAt(index));
+        }
+        return matched;
+    }
+
+    private int readVarInt(int[] position) {
+        int value = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = mData[position[0]++];
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    private void ensureCapacity(int extra) {
+        if (mLength + extra > mData.length) {
+            mData = Arrays.copyOf(mData, Math.max(mData.length * 2, mLength + extra));
+        }
+    }
+
+    /**
+     * @return the bytes allocated by this thread so far, or -1 if the VM can't tell.
+     */
+    private static long getAllocatedBytes() {
+        if (ALLOCATED_BYTES == null) {
+            return -1;
+        }
+        try {
+            return (Long) ALLOCATED_BYTES.invoke(THREAD_BEAN, Thread.currentThread().getId());
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    private static long now() {
+        return System.nanoTime() / 1000000;
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        byte[] chunk = new byte[4096];
+        int read;
+        while ((read = in.read(chunk)) != -1) {
+            buffer.write(chunk, 0, read);
+        }
+        return buffer.toByteArray();
+    }
+
+    private static void writeInt(OutputStream out, int value) throws IOException {
+        out.write(value >>> 24);
+        out.write(value >>> 16);
+        out.write(value >>> 8);
+        out.write(value);
+    }
+
+    private static int readInt(byte[] data, int offset) {
+        return ((data[offset] & 0xFF) << 24) | ((data[offset + 1] & 0xFF) << 16)
+                | ((data[offset + 2] & 0xFF) << 8) | (data[offset + 3] & 0xFF);
+    }
+}
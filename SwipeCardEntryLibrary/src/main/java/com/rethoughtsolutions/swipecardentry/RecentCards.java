@@ -0,0 +1,721 @@
+package com.rethoughtsolutions.swipecardentry;
+
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * On-device store of recently used cards, so a returning customer's card can be suggested as they
+ * start typing it into a {@link SwipeCardEntry}, see
+ * {@link SwipeCardEntry#setRecentCards(RecentCards)}. Only masked details are kept: the BIN (first
+ * 6 digits), the last 4 digits, the length, the expiry and the scheme.
+ * <p/>
+ * Cards are kept in an append-only file, every use appending a fixed size record, which is replayed
+ * into a compact in-memory index sorted by BIN when loaded, and rewritten once it holds too many
+ * stale records. Beyond the capacity the least recently used cards are dropped, as are any not used
+ * within the maximum age. Finding matches doesn't allocate.
+ * <p/>
+ * This isn't thread safe, it can be loaded on a background thread and then only used on the main
+ * thread.
+ * <p/>
+ * File layout (big endian): an 8 byte header (magic, version), then 16 byte records of the BIN,
+ * last 4, expiry month, expiry year, minutes since the epoch it was used, scheme, record type,
+ * length and padding.
+ */
+public class RecentCards {
+
+    /**
+     * Source of the current time, so tests can move it on.
+     */
+    interface Clock {
+
+        /**
+         * @return the current time in milliseconds since the epoch.
+         */
+        long currentTimeMillis();
+    }
+
+    private static final Clock SYSTEM_CLOCK = new Clock() {
+        @Override
+        public long currentTimeMillis() {
+            return System.currentTimeMillis();
+        }
+    };
+
+    /**
+     * The number of leading digits kept.
+     */
+    public static final int BIN_LENGTH = 6;
+
+    /**
+     * The largest capacity.
+     */
+    public static final int MAX_CAPACITY = 1 << 16;
+
+    private static final int MAGIC = 0x53435243; // "SCRC"
+
+    private static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 8;
+
+    private static final int RECORD_SIZE = 16;
+
+    private static final byte RECORD_USE = 1;
+
+    private static final byte RECORD_REMOVE = 2;
+
+    //the file is rewritten once it holds this many times the capacity in records
+    private static final int COMPACT_FACTOR = 2;
+
+    private static final int INDEX_BITS = 18;
+
+    private static final int MAX_RECORDS = 1 << INDEX_BITS;
+
+    private static final long INDEX_MASK = MAX_RECORDS - 1;
+
+    //the card keys are sorted 12 bits at a time
+    private static final int RADIX_BITS = 12;
+
+    private static final int CARD_KEY_BITS = 45;
+
+    private static final int[] POWERS_OF_TEN = {1, 10, 100, 1000, 10000, 100000, 1000000};
+
+    private static final CardNumber.Scheme[] SCHEMES = CardNumber.Scheme.values();
+
+    private final File mFile;
+
+    private final int mCapacity;
+
+    private final long mMaxAgeMillis;
+
+    private final Clock mClock;
+
+    private int mSize = 0;
+
+    private final int[] mBins;
+
+    private final short[] mLastFours;
+
+    private final byte[] mLengths;
+
+    private final byte[] mExpiryMonths;
+
+    private final byte[] mExpiryYears;
+
+    private final byte[] mSchemes;
+
+    /**
+     * Minutes since the epoch.
+     */
+    private final int[] mLastUsed;
+
+    private int mRecordCount = 0;
+
+    private long mLoadNanos = 0;
+
+    private RecentCards(File file, int capacity, long maxAgeMillis, Clock clock) {
+        mFile = file;
+        mCapacity = capacity;
+        mMaxAgeMillis = maxAgeMillis;
+        mClock = clock;
+        mBins = new int[capacity];
+        mLastFours = new short[capacity];
+        mLengths = new byte[capacity];
+        mExpiryMonths = new byte[capacity];
+        mExpiryYears = new byte[capacity];
+        mSchemes = new byte[capacity];
+        mLastUsed = new int[capacity];
+    }
+
+    /**
+     * Loads the recent cards from the given file, which is created when a card is first added.
+     *
+     * @param file         the file to keep the cards in.
+     * @param capacity     the most cards to keep (1 - MAX_CAPACITY), least recently used are
+     *                     dropped first.
+     * @param maxAgeMillis the longest to keep a card since it was last used, e.g. 90 days.
+     * @return the recent cards.
+     * @throws IOException if the file can't be read or isn't a recent cards file.
+     */
+    public static RecentCards load(File file, int capacity, long maxAgeMillis)
+            throws IOException {
+        return load(file, capacity, maxAgeMillis, SYSTEM_CLOCK);
+    }
+
+    /**
+     * As {@link #load(File, int, long)}, taking the time from the given clock.
+     */
+    static RecentCards load(File file, int capacity, long maxAgeMillis, Clock clock)
+            throws IOException {
+        if ((capacity < 1) || (capacity > MAX_CAPACITY)) {
+            throw new IllegalArgumentException("Capacity out of range: " + capacity);
+        }
+
+        final long start = System.nanoTime();
+        RecentCards cards = new RecentCards(file, capacity, maxAgeMillis, clock);
+        if (file.exists()) {
+            cards.readFile();
+        }
+        cards.mLoadNanos = System.nanoTime() - start;
+        return cards;
+    }
+
+    /**
+     * @return the time taken to load the file and build the index, in nanoseconds.
+     */
+    public long getLoadNanos() {
+        return mLoadNanos;
+    }
+
+    /**
+     * @return the number of cards kept.
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * Finds the cards that start with the digits entered so far, most recently used first. This
+     * doesn't allocate, so can be called on every keystroke.
+     *
+     * @param number   the digits entered so far.
+     * @param complete true if the number is complete, so the last 4 digits must match too.
+     * @param matches  filled in with the index of each match, up to its length.
+     * @return the number of matches filled in.
+     */
+    public int findMatches(CardNumber number, boolean complete, int[] matches) {
+        final int length = Math.min(number.length(), BIN_LENGTH);
+        if ((length == 0) || (matches.length == 0)) {
+            return 0;
+        }
+
+        final int scale = POWERS_OF_TEN[BIN_LENGTH - length];
+        final int low = number.getPrefix(length) * scale;
+        final int high = low + scale;
+        final int lastFour = complete ? number.getLastFour() : -1;
+        final long cutoff = getCutoff();
+
+        int count = 0;
+        for (int index = lowerBound(low); (index < mSize) && (mBins[index] < high); index++) {
+            if ((mLastUsed[index] < cutoff) || ((lastFour >= 0)
+                    && ((mLastFours[index] != lastFour) || (mLengths[index] != number.length())))) {
+                continue;
+            }
+
+            //insert by most recent use, dropping the least recent once full
+            int position = count;
+            while ((position > 0) && (mLastUsed[matches[position - 1]] < mLastUsed[index])) {
+                position--;
+            }
+            if (position >= matches.length) {
+                continue;
+            }
+            final int end = Math.min(count, matches.length - 1);
+            System.arraycopy(matches, position, matches, position + 1, end - position);
+            matches[position] = index;
+            if (count < matches.length) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Records a use of the given card, adding it if it isn't already kept. Only the masked details
+     * are stored. This writes to the file, so call it once a payment has gone through rather than
+     * while the card is being entered.
+     *
+     * @param number      the full card number, longer than 10 digits.
+     * @param expiryMonth the expiry month (1 - 12).
+     * @param expiryYear  the last 2 digits of the expiry year.
+     * @throws IOException if the file can't be written to.
+     */
+    public void add(CardNumber number, int expiryMonth, int expiryYear) throws IOException {
+        if (number.length() <= BIN_LENGTH + 4) {
+            throw new IllegalArgumentException("Card number too short to mask");
+        }
+        if ((expiryMonth < 1) || (expiryMonth > 12) || (expiryYear < 0) || (expiryYear > 99)) {
+            throw new IllegalArgumentException("Invalid expiry " + expiryMonth + "/" + expiryYear);
+        }
+
+        final int bin = number.getPrefix(BIN_LENGTH);
+        final int lastFour = number.getLastFour();
+        int index = indexOf(bin, lastFour, expiryMonth, expiryYear);
+        if (index < 0) {
+            removeExpired();
+            if (mSize == mCapacity) {
+                //recorded, otherwise replaying the file would bring it back
+                final int leastRecent = getLeastRecentlyUsed();
+                final ByteBuffer record = createRecord(leastRecent, RECORD_REMOVE);
+                removeAt(leastRecent);
+                appendRecord(record);
+            }
+
+            //in card order, so once compacted the file is already sorted when loaded
+            final long key = getCardKey(bin, lastFour, expiryMonth, expiryYear);
+            index = lowerBound(bin);
+            while ((index < mSize) && (getCardKey(mBins[index], mLastFours[index],
+                    mExpiryMonths[index], mExpiryYears[index]) < key)) {
+                index++;
+            }
+            insertAt(index);
+            mBins[index] = bin;
+            mLastFours[index] = (short) lastFour;
+            mExpiryMonths[index] = (byte) expiryMonth;
+            mExpiryYears[index] = (byte) expiryYear;
+        }
+        mLengths[index] = (byte) number.length();
+        mSchemes[index] = (byte) number.getScheme().ordinal();
+        mLastUsed[index] = getNow();
+
+        appendRecord(createRecord(index, RECORD_USE));
+    }
+
+    /**
+     * Forgets the card at the given index.
+     *
+     * @param index the index of the card, e.g. from {@link #findMatches}.
+     * @throws IOException if the file can't be written to.
+     */
+    public void remove(int index) throws IOException {
+        checkIndex(index);
+        final ByteBuffer record = createRecord(index, RECORD_REMOVE);
+        removeAt(index);
+        appendRecord(record);
+    }
+
+    /**
+     * @param index the index of the card.
+     * @return the first 6 digits.
+     */
+    public int getBin(int index) {
+        checkIndex(index);
+        return mBins[index];
+    }
+
+    /**
+     * @param index the index of the card.
+     * @return the last 4 digits.
+     */
+    public int getLastFour(int index) {
+        checkIndex(index);
+        return mLastFours[index];
+    }
+
+    /**
+     * @param index the index of the card.
+     * @return the expiry month (1 - 12).
+     */
+    public int getExpiryMonth(int index) {
+        checkIndex(index);
+        return mExpiryMonths[index];
+    }
+
+    /**
+     * @param index the index of the card.
+     * @return the last 2 digits of the expiry year.
+     */
+    public int getExpiryYear(int index) {
+        checkIndex(index);
+        return mExpiryYears[index];
+    }
+
+    /**
+     * @param index the index of the card.
+     * @return the scheme.
+     */
+    public CardNumber.Scheme getScheme(int index) {
+        checkIndex(index);
+        return SCHEMES[mSchemes[index]];
+    }
+
+    /**
+     * @param index the index of the card.
+     * @return when the card was last used, in milliseconds since the epoch (to the minute).
+     */
+    public long getLastUsed(int index) {
+        checkIndex(index);
+        return mLastUsed[index] * 60000L;
+    }
+
+    /**
+     * @param index the index of the card.
+     * @return the number with everything but the first 6 and last 4 digits replaced by '*', as
+     * {@link CardNumber#getMasked()}.
+     */
+    public String getMasked(int index) {
+        checkIndex(index);
+        final int length = mLengths[index];
+        final char[] masked = new char[length];
+        Arrays.fill(masked, '*');
+        int bin = mBins[index];
+        for (int position = BIN_LENGTH; --position >= 0; bin /= 10) {
+            masked[position] = (char) ('0' + (bin % 10));
+        }
+        int lastFour = mLastFours[index];
+        for (int position = length; --position >= length - 4; lastFour /= 10) {
+            masked[position] = (char) ('0' + (lastFour % 10));
+        }
+        return new String(masked);
+    }
+
+    private void readFile() throws IOException {
+        final byte[] data;
+        RandomAccessFile file = new RandomAccessFile(mFile, "r");
+        try {
+            data = new byte[(int) file.length()];
+            file.readFully(data);
+        } finally {
+            file.close();
+        }
+
+        if ((data.length < HEADER_SIZE) || (readInt(data, 0) != MAGIC)) {
+            throw new IOException("Not a recent cards file");
+        }
+        if (readInt(data, 4) != VERSION) {
+            throw new IOException("Unsupported recent cards version " + readInt(data, 4));
+        }
+
+        //a partly written record at the end (e.g. from a crash while adding) is ignored
+        final int recordCount = (data.length - HEADER_SIZE) / RECORD_SIZE;
+        final int first = Math.max(0, recordCount - MAX_RECORDS);
+        final int count = recordCount - first;
+        mRecordCount = recordCount;
+
+        //sort the records by card, keeping file order for each card, so the last record of each
+        //card says whether it is still kept and when it was last used. Corrupt records are skipped.
+        final long[] order = new long[count];
+        int validCount = 0;
+        for (int index = 0; index < count; index++) {
+            final int offset = getRecordOffset(first + index);
+            if (isValidRecord(data, offset)) {
+                order[validCount++] = (getCardKey(data, offset) << INDEX_BITS) | index;
+            }
+        }
+        sortByCard(order, validCount);
+
+        //the card key starts with the BIN, so the live cards are picked out already in BIN order
+        final long cutoff = getCutoff();
+        int liveCount = 0;
+        for (int index = 0; index < validCount; index++) {
+            if ((index + 1 < validCount) && ((order[index] >>> INDEX_BITS)
+                    == (order[index + 1] >>> INDEX_BITS))) {
+                continue;
+            }
+            final int record = first + (int) (order[index] & INDEX_MASK);
+            final int offset = getRecordOffset(record);
+            final int lastUsed = readInt(data, offset + 8);
+            if ((data[offset + 13] == RECORD_USE) && (lastUsed >= cutoff)) {
+                //reuses the sorted array, the live cards never overtake the reading position
+                order[liveCount++] = ((long) lastUsed << INDEX_BITS) | record;
+            }
+        }
+
+        //beyond the capacity only the most recently used are kept, then put back in card order
+        int start = 0;
+        if (liveCount > mCapacity) {
+            Arrays.sort(order, 0, liveCount);
+            start = liveCount - mCapacity;
+            for (int index = start; index < liveCount; index++) {
+                final int record = (int) (order[index] & INDEX_MASK);
+                order[index] = (getCardKey(data, getRecordOffset(record)) << INDEX_BITS) | record;
+            }
+            Arrays.sort(order, start, liveCount);
+        }
+
+        for (int index = start; index < liveCount; index++) {
+            final int offset = getRecordOffset((int) (order[index] & INDEX_MASK));
+            final int entry = mSize++;
+            mBins[entry] = readInt(data, offset);
+            mLastFours[entry] = readShort(data, offset + 4);
+            mExpiryMonths[entry] = data[offset + 6];
+            mExpiryYears[entry] = data[offset + 7];
+            mLastUsed[entry] = readInt(data, offset + 8);
+            mSchemes[entry] = data[offset + 12];
+            mLengths[entry] = data[offset + 14];
+        }
+
+        if (mRecordCount > COMPACT_FACTOR * mCapacity) {
+            compact();
+        }
+    }
+
+    /**
+     * Appends a record to the file, once the in-memory cards have been updated to match.
+     */
+    private void appendRecord(ByteBuffer record) throws IOException {
+        final long length = mFile.length();
+        if ((length < HEADER_SIZE) || (((length - HEADER_SIZE) % RECORD_SIZE) != 0)
+                || (mRecordCount >= COMPACT_FACTOR * mCapacity)) {
+            //missing, partly written or too many stale records, write out just the current cards
+            compact();
+            return;
+        }
+
+        FileOutputStream out = new FileOutputStream(mFile, true);
+        try {
+            out.write(record.array());
+        } finally {
+            out.close();
+        }
+        mRecordCount++;
+    }
+
+    /**
+     * Rewrites the file with a record for each card kept, replacing it in one go.
+     */
+    private void compact() throws IOException {
+        final File temp = new File(mFile.getPath() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(temp)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            for (int index = 0; index < mSize; index++) {
+                out.write(createRecord(index, RECORD_USE).array());
+            }
+        } finally {
+            out.close();
+        }
+
+        if (!temp.renameTo(mFile)) {
+            throw new IOException("Unable to replace " + mFile);
+        }
+        mRecordCount = mSize;
+    }
+
+    private ByteBuffer createRecord(int index, byte type) {
+        final ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+        record.putInt(mBins[index]);
+        record.putShort(mLastFours[index]);
+        record.put(mExpiryMonths[index]);
+        record.put(mExpiryYears[index]);
+        record.putInt(mLastUsed[index]);
+        record.put(mSchemes[index]);
+        record.put(type);
+        record.put(mLengths[index]);
+        record.put((byte) 0);
+        return record;
+    }
+
+    /**
+     * Sorts (card key, record) pairs by card key, keeping them in record order for each card. A
+     * compacted file is written in card order, so usually only the records appended since are out
+     * of order: the sorted run at the start is found first, and only the rest is sorted and merged
+     * in.
+     */
+    private static void sortByCard(long[] order, int count) {
+        int sorted = 1;
+        while ((sorted < count) && (order[sorted - 1] < order[sorted])) {
+            sorted++;
+        }
+        if (sorted >= count) {
+            return;
+        }
+
+        final long[] rest = Arrays.copyOfRange(order, sorted, count);
+        radixSort(rest);
+        //merged from the end, so the sorted run is never overwritten before it is read (the pairs
+        //are all different, as no two have the same record)
+        int run = sorted - 1;
+        int next = rest.length - 1;
+        for (int index = count - 1; next >= 0; index--) {
+            if ((run >= 0) && (order[run] > rest[next])) {
+                order[index] = order[run--];
+            } else {
+                order[index] = rest[next--];
+            }
+        }
+    }
+
+    /**
+     * Sorts (card key, record) pairs by card key, keeping them in record order for each card. This
+     * is a radix sort, as unlike Arrays.sort it is quick on a cold load before any JIT has kicked in
+     * and is linear in the number of records.
+     */
+    private static void radixSort(long[] order) {
+        final int count = order.length;
+        final int radix = 1 << RADIX_BITS;
+        final int[] counts = new int[radix];
+        long[] from = order;
+        long[] to = new long[count];
+        for (int shift = INDEX_BITS; shift < INDEX_BITS + CARD_KEY_BITS; shift += RADIX_BITS) {
+            Arrays.fill(counts, 0);
+            for (int index = 0; index < count; index++) {
+                counts[(int) (from[index] >>> shift) & (radix - 1)]++;
+            }
+            int total = 0;
+            for (int digit = 0; digit < radix; digit++) {
+                final int digitCount = counts[digit];
+                counts[digit] = total;
+                total += digitCount;
+            }
+            //each pass is stable, so the records stay in order for each card
+            for (int index = 0; index < count; index++) {
+                final long value = from[index];
+                to[counts[(int) (value >>> shift) & (radix - 1)]++] = value;
+            }
+            final long[] swap = from;
+            from = to;
+            to = swap;
+        }
+        if (from != order) {
+            System.arraycopy(from, 0, order, 0, count);
+        }
+    }
+
+    /**
+     * @return true if the record at the given offset holds a card that could have been added, so
+     * a corrupt record can't index past the schemes or the masked number.
+     */
+    private static boolean isValidRecord(byte[] data, int offset) {
+        final int bin = readInt(data, offset);
+        final int lastFour = readShort(data, offset + 4);
+        final int expiryMonth = data[offset + 6];
+        final int expiryYear = data[offset + 7];
+        final int scheme = data[offset + 12];
+        final int type = data[offset + 13];
+        final int length = data[offset + 14];
+        return (bin >= 0) && (bin < POWERS_OF_TEN[BIN_LENGTH]) && (lastFour >= 0)
+                && (lastFour < POWERS_OF_TEN[4]) && (expiryMonth >= 1) && (expiryMonth <= 12)
+                && (expiryYear >= 0) && (expiryYear <= 99) && (scheme >= 0)
+                && (scheme < SCHEMES.length) && ((type == RECORD_USE) || (type == RECORD_REMOVE))
+                && (length > BIN_LENGTH + 4) && (length <= CardNumber.MAX_LENGTH);
+    }
+
+    /**
+     * @return the BIN, last 4 & expiry of a (valid) record, which identify a card, packed into
+     * CARD_KEY_BITS bits with the BIN at the top.
+     */
+    private static long getCardKey(byte[] data, int offset) {
+        return getCardKey(readInt(data, offset), readShort(data, offset + 4), data[offset + 6],
+                data[offset + 7]);
+    }
+
+    private static long getCardKey(int bin, int lastFour, int expiryMonth, int expiryYear) {
+        return ((long) bin << 25) | ((long) lastFour << 11) | ((long) expiryMonth << 7)
+                | expiryYear;
+    }
+
+    /**
+     * Reads a big endian int straight from the file's bytes, much cheaper than through a
+     * ByteBuffer while the load is still running cold.
+     */
+    private static int readInt(byte[] data, int offset) {
+        return (data[offset] << 24) | ((data[offset + 1] & 0xFF) << 16)
+                | ((data[offset + 2] & 0xFF) << 8) | (data[offset + 3] & 0xFF);
+    }
+
+    private static short readShort(byte[] data, int offset) {
+        return (short) ((data[offset] << 8) | (data[offset + 1] & 0xFF));
+    }
+
+    private static int getRecordOffset(int record) {
+        return HEADER_SIZE + (record * RECORD_SIZE);
+    }
+
+    private int indexOf(int bin, int lastFour, int expiryMonth, int expiryYear) {
+        for (int index = lowerBound(bin); (index < mSize) && (mBins[index] == bin); index++) {
+            if ((mLastFours[index] == lastFour) && (mExpiryMonths[index] == expiryMonth)
+                    && (mExpiryYears[index] == expiryYear)) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the index of the first card with a BIN of at least the given BIN.
+     */
+    private int lowerBound(int bin) {
+        int low = 0;
+        int high = mSize;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (mBins[middle] < bin) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private int getLeastRecentlyUsed() {
+        int leastRecent = 0;
+        for (int index = 1; index < mSize; index++) {
+            if (mLastUsed[index] < mLastUsed[leastRecent]) {
+                leastRecent = index;
+            }
+        }
+        return leastRecent;
+    }
+
+    private void removeExpired() {
+        final long cutoff = getCutoff();
+        int kept = 0;
+        for (int index = 0; index < mSize; index++) {
+            if (mLastUsed[index] >= cutoff) {
+                copy(index, kept++);
+            }
+        }
+        mSize = kept;
+    }
+
+    private void insertAt(int index) {
+        final int count = mSize - index;
+        System.arraycopy(mBins, index, mBins, index + 1, count);
+        System.arraycopy(mLastFours, index, mLastFours, index + 1, count);
+        System.arraycopy(mLengths, index, mLengths, index + 1, count);
+        System.arraycopy(mExpiryMonths, index, mExpiryMonths, index + 1, count);
+        System.arraycopy(mExpiryYears, index, mExpiryYears, index + 1, count);
+        System.arraycopy(mSchemes, index, mSchemes, index + 1, count);
+        System.arraycopy(mLastUsed, index, mLastUsed, index + 1, count);
+        mSize++;
+    }
+
+    private void removeAt(int index) {
+        final int count = mSize - index - 1;
+        System.arraycopy(mBins, index + 1, mBins, index, count);
+        System.arraycopy(mLastFours, index + 1, mLastFours, index, count);
+        System.arraycopy(mLengths, index + 1, mLengths, index, count);
+        System.arraycopy(mExpiryMonths, index + 1, mExpiryMonths, index, count);
+        System.arraycopy(mExpiryYears, index + 1, mExpiryYears, index, count);
+        System.arraycopy(mSchemes, index + 1, mSchemes, index, count);
+        System.arraycopy(mLastUsed, index + 1, mLastUsed, index, count);
+        mSize--;
+    }
+
+    private void copy(int from, int to) {
+        mBins[to] = mBins[from];
+        mLastFours[to] = mLastFours[from];
+        mLengths[to] = mLengths[from];
+        mExpiryMonths[to] = mExpiryMonths[from];
+        mExpiryYears[to] = mExpiryYears[from];
+        mSchemes[to] = mSchemes[from];
+        mLastUsed[to] = mLastUsed[from];
+    }
+
+    private void checkIndex(int index) {
+        if ((index < 0) || (index >= mSize)) {
+            throw new IndexOutOfBoundsException("Index " + index + ", size " + mSize);
+        }
+    }
+
+    private int getNow() {
+        return (int) (mClock.currentTimeMillis() / 60000L);
+    }
+
+    /**
+     * @return the oldest last use kept, in minutes since the epoch.
+     */
+    private long getCutoff() {
+        return getNow() - (mMaxAgeMillis / 60000L);
+    }
+}
@@ -0,0 +1,122 @@
+package com.rethoughtsolutions.swipecardentry;
+
+
+import android.content.Context;
+import android.graphics.PixelFormat;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.Parcelable;
+import android.util.AttributeSet;
+import android.view.SurfaceView;
+import android.widget.FrameLayout;
+
+/**
+ * {@link SwipeCardEntry} whose text, card image and cursor are drawn on a dedicated render thread
+ * into a SurfaceView, so the slide and cursor keep drawing even while the main thread is busy
+ * (layout, list scrolling etc.). Everything else goes through the wrapped card entry, see
+ * {@link #getCardEntry()}, which only draws its background.
+ * <p/>
+ * Input submitted off the main thread ({@link SwipeCardEntry#submitKeyEvent(int)},
+ * {@link SwipeCardEntry#setNumber(String)}, {@link SwipeCardEntry#fill(String, int, int, String)})
+ * is applied on the render thread as soon as it arrives and drawn from there, while the card entry
+ * applies it on the main thread as usual. Key events from the soft keyboard are delivered on the
+ * main thread in the first place, so they are drawn once the main thread has applied them.
+ * <p/>
+ * A SurfaceView is used rather than a TextureView, as a TextureView's frames are still composited
+ * through the main thread. The surface is a media overlay behind the window (so dialogs & popups
+ * still draw over it), showing through a hole the SurfaceView punches in it, so it can't be
+ * overlapped by other views in the layout. The card entry's background is drawn into the surface
+ * as well, as the hole also punches through it.
+ * <p/>
+ * Any android:id in the attributes belongs to this wrapper, the wrapped card entry has no id of
+ * its own and its state is saved & restored along with the wrapper's.
+ */
+public class SurfaceSwipeCardEntry extends FrameLayout {
+
+    private SwipeCardEntry mCardEntry;
+
+    private SurfaceView mSurfaceView;
+
+    public SurfaceSwipeCardEntry(Context context) {
+        super(context);
+        initialize(context, null, 0);
+    }
+
+    public SurfaceSwipeCardEntry(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        initialize(context, attrs, android.R.style.Widget_EditText);
+    }
+
+    public SurfaceSwipeCardEntry(Context context, AttributeSet attrs, int defStyle) {
+        super(context, attrs, defStyle);
+        initialize(context, attrs, defStyle);
+    }
+
+    private void initialize(Context context, AttributeSet attrs, int defStyle) {
+        //the attributes (background, padding, text) belong to the card entry, not this wrapper
+        clearBackground();
+        setPadding(0, 0, 0, 0);
+
+        mCardEntry = (attrs == null) ? new SwipeCardEntry(context)
+                : new SwipeCardEntry(context, attrs, defStyle);
+        //the attributes' id is the wrapper's, two views with the same id would save their state
+        //over each other
+        mCardEntry.setId(NO_ID);
+        addView(mCardEntry, new LayoutParams(LayoutParams.MATCH_PARENT,
+                LayoutParams.WRAP_CONTENT));
+
+        mSurfaceView = new SurfaceView(context);
+        mSurfaceView.setZOrderMediaOverlay(true);
+        mSurfaceView.getHolder().setFormat(PixelFormat.TRANSLUCENT);
+        addView(mSurfaceView, new LayoutParams(LayoutParams.MATCH_PARENT,
+                LayoutParams.MATCH_PARENT));
+
+        mCardEntry.setSurfaceRenderer(new CardSurfaceRenderer(mSurfaceView.getHolder()));
+    }
+
+    @SuppressWarnings("deprecation")
+    private void clearBackground() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            setBackground(null);
+        } else {
+            setBackgroundDrawable(null);
+        }
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        mCardEntry.measure(widthMeasureSpec, heightMeasureSpec);
+        final int width = mCardEntry.getMeasuredWidth();
+        final int height = mCardEntry.getMeasuredHeight();
+
+        //the surface exactly covers the card entry
+        mSurfaceView.measure(MeasureSpec.makeMeasureSpec(width, MeasureSpec.EXACTLY),
+                MeasureSpec.makeMeasureSpec(height, MeasureSpec.EXACTLY));
+        setMeasuredDimension(width, height);
+    }
+
+    @Override
+    protected Parcelable onSaveInstanceState() {
+        Bundle bundle = new Bundle();
+        bundle.putParcelable("superstate", super.onSaveInstanceState());
+        bundle.putParcelable("cardEntry", mCardEntry.onSaveInstanceState());
+        return bundle;
+    }
+
+    @Override
+    protected void onRestoreInstanceState(Parcelable state) {
+        if (state instanceof Bundle) {
+            Bundle bundle = (Bundle) state;
+            mCardEntry.onRestoreInstanceState(bundle.getParcelable("cardEntry"));
+            state = bundle.getParcelable("superstate");
+        }
+        super.onRestoreInstanceState(state);
+    }
+
+    /**
+     * @return the wrapped card entry, to set listeners on, read the entered details from etc.
+     */
+    public SwipeCardEntry getCardEntry() {
+        return mCardEntry;
+    }
+}
@@ -1,36 +1,47 @@
 package com.rethoughtsolutions.swipecardentry;
 
 
+import android.animation.Animator;
+import android.animation.AnimatorListenerAdapter;
 import android.animation.ValueAnimator;
 import android.content.Context;
 import android.content.res.ColorStateList;
+import android.content.res.Configuration;
 import android.content.res.TypedArray;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
 import android.graphics.Rect;
 import android.graphics.Typeface;
+import android.graphics.drawable.Drawable;
+import android.os.Build;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
 import android.os.Parcelable;
-import android.text.Editable;
 import android.text.InputType;
-import android.text.SpannableStringBuilder;
 import android.text.TextPaint;
 import android.util.AttributeSet;
 import android.view.KeyEvent;
 import android.view.MotionEvent;
 import android.view.View;
+import android.view.ViewTreeObserver;
+import android.view.accessibility.AccessibilityNodeProvider;
+import android.view.animation.AnimationUtils;
 import android.view.inputmethod.BaseInputConnection;
 import android.view.inputmethod.EditorInfo;
 import android.view.inputmethod.InputConnection;
 import android.view.inputmethod.InputMethodManager;
 
-import java.util.Calendar;
-import java.util.regex.Pattern;
+import com.rethoughtsolutions.swipecardentry.CardInput.CardType;
+import com.rethoughtsolutions.swipecardentry.CardInput.Mode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Implementation of a credit card entry field, with validation of number, and expiry month/year.
@@ -50,133 +61,533 @@ public class SwipeCardEntry extends View {
         public void onCardEntryCompleted(boolean completed);
     }
 
+    /**
+     * Told each time a frame of the card entry has been drawn, by either backend, for measuring
+     * the latency from input to the drawn frame.
+     */
+    interface FrameObserver {
+
+        /**
+         * Called on the thread that drew the frame, the main thread for onDraw or the render
+         * thread for the surface backend.
+         *
+         * @param number the card number the frame shows.
+         */
+        void onFrameDrawn(String number);
+    }
+
+    /**
+     * Listener of the recent cards matching the number entered so far, see
+     * {@link #setRecentCards(RecentCards)}.
+     */
+    public interface SuggestionListener {
+
+        /**
+         * Called whenever the matching recent cards change as the number is entered, on the main
+         * thread.
+         *
+         * @param recentCards the recent cards.
+         * @param matches     the indexes of the matching cards, most recently used first. The
+         *                    array is reused, so must not be kept.
+         * @param count       the number of matches (0 to clear any suggestions).
+         */
+        public void onSuggestionsChanged(RecentCards recentCards, int[] matches, int count);
+    }
+
     private static final String NUMBER_HINT = "1234 5678 9012 3456";
 
     private static final String EXPIRY_HINT = "MM/YY";
 
-    private static final String CVC_HINT = "CVC";
+    private static final int IMAGE_BUFFER_PADDING = 25;
+
+    private static final int SLIDE_DURATION = 500;
 
-    private static final String AMEX_CVC_HINT = "4DBC";
+    private static final int MAX_SUGGESTIONS = 3;
 
-    private static final int IMAGE_BUFFER_PADDING = 25;
+    private static final int DIRTY_NUMBER = 1;
+
+    private static final int DIRTY_EXPIRY = 1 << 1;
+
+    private static final int DIRTY_CVC = 1 << 2;
+
+    private static final int DIRTY_IMAGE = 1 << 3;
+
+    private static final int DIRTY_CURSOR = 1 << 4;
+
+    //the brand & CVC images of each card type, indexed by ordinal
+    private static final int[] BRAND_IMAGES = {R.array.brand_atlas_generic_bank,
+            R.array.brand_atlas_visa_curved, R.array.brand_atlas_mastercard_curved,
+            R.array.brand_atlas_american_express_curved};
+
+    private static final int[] CVC_IMAGES = {R.array.brand_atlas_generic_bank,
+            R.array.brand_atlas_cvv_visa, R.array.brand_atlas_cvv_mc, R.array.brand_atlas_cvv_amex};
+
+    /**
+     * Immutable snapshot of the entered card details, published after each batch of input so
+     * drawing and the getters never see a half applied change, and can read it from any thread.
+     */
+    private static final class CardState {
+
+        private final Mode mMode;
+
+        private final CardType mCardType;
+
+        private final boolean mError;
 
-    private static final int BLINK_DURATION = 500;
+        private final boolean mCompleted;
 
-    private enum Mode {
-        NUMBER,
-        EXPIRY_MONTH,
-        EXPIRY_YEAR,
-        CVC
+        private final String mNumber;
+
+        private final String mNumberFormatted;
+
+        private final String mMonth;
+
+        private final String mYear;
+
+        private final String mExpiryFormatted;
+
+        private final String mCVC;
+
+        private final CardNumber mCardNumber;
+
+        //the sequence number of the last queued input applied, see QueuedInput
+        private final long mAppliedSequence;
+
+        CardState(CardInput input, CardState previous, long appliedSequence) {
+            mMode = input.getMode();
+            mCardType = input.getCardType();
+            mError = input.isError();
+            mCompleted = input.isCompleted();
+            mNumber = snapshot(input.getNumber(), (previous != null) ? previous.mNumber : null);
+            mNumberFormatted = snapshot(input.getNumberFormatted(),
+                    (previous != null) ? previous.mNumberFormatted : null);
+            mMonth = snapshot(input.getMonth(), (previous != null) ? previous.mMonth : null);
+            mYear = snapshot(input.getYear(), (previous != null) ? previous.mYear : null);
+            mExpiryFormatted = snapshot(input.getExpiryFormatted(),
+                    (previous != null) ? previous.mExpiryFormatted : null);
+            mCVC = snapshot(input.getCVC(), (previous != null) ? previous.mCVC : null);
+            mCardNumber = ((previous != null) && (previous.mNumber == mNumber))
+                    ? previous.mCardNumber : CardNumber.parse(mNumber);
+            mAppliedSequence = appliedSequence;
+        }
+
+        /**
+         * Reuses the previous string if the text hasn't changed, so a keystroke only copies the
+         * field it touched.
+         */
+        private static String snapshot(CharSequence text, String previous) {
+            if ((previous != null) && (previous.contentEquals(text))) {
+                return previous;
+            }
+            return text.toString();
+        }
     }
 
-    private enum CardType {
-        UNKNOWN("", 16, R.drawable.generic_bank, R.drawable.generic_bank, new int[]{},
-                CVC_HINT),
-        VISA("^4[0-9]$", 16, R.drawable.visa_curved, R.drawable.cvv_visa,
-                new int[]{4, 8, 12}, CVC_HINT),
-        MASTERCARD("^5[1-5]$", 16, R.drawable.mastercard_curved,
-                R.drawable.cvv_mc, new int[]{4, 8, 12}, CVC_HINT),
-        AMEX("^3[47]$", 15, R.drawable.american_express_curved,
-                R.drawable.cvv_amex, new int[]{4, 10}, AMEX_CVC_HINT);
+    /**
+     * Input submitted from any thread, numbered in the order it was submitted so the render thread
+     * backend can tell which of it the main thread has applied.
+     */
+    static final class QueuedInput {
 
-        private Pattern mPartial;
+        private final long mSequence;
 
-        private int mResource;
+        //a String number, a Fill or an Integer key code
+        private final Object mInput;
 
-        private int mCVCResource;
+        QueuedInput(long sequence, Object input) {
+            mSequence = sequence;
+            mInput = input;
+        }
+    }
 
-        private int mLength;
+    /**
+     * Where the expiry & CVC sit once the number is complete, and how far the text slides across
+     * to show them.
+     */
+    static final class SlideLayout {
 
-        private int mCVCLength;
+        private float mExpiryOffset = 0.0f;
 
-        private int mBreaks[];
+        private float mCVCOffset = 0.0f;
 
-        private String mCVCHint;
+        private float mSlideDistance = 0.0f;
 
-        CardType(String guess, int length, int resource, int cvvResource,
-                int[] breaks, String cvcHint) {
-            mPartial = Pattern.compile(guess);
-            mLength = length;
-            mResource = resource;
-            mCVCResource = cvvResource;
-            mBreaks = breaks;
-            mCVCLength = cvcHint.length();
-            mCVCHint = cvcHint;
+        /**
+         * Works out the layout for a complete number.
+         */
+        void measure(TextPaint textPaint, CharSequence number, CharSequence numberFormatted,
+                CardType cardType, int width, int paddingLeft, int paddingRight, int imageWidth) {
+            final int numberLength = cardType.getLength();
+            final int lastBreakIndex = cardType.getLastBreak();
+            final int fourNumberTextWidth = (int) textPaint
+                    .measureText(number, lastBreakIndex, numberLength);
+            final int expiryTextWidth = (int) textPaint.measureText(EXPIRY_HINT);
+            final int cvcTextWidth = (int) textPaint.measureText(cardType.getCVCHint());
+            final int formattedNumberWidth = (int) textPaint.measureText(numberFormatted, 0,
+                    numberFormatted.length());
+
+            final int imageEndPosition = paddingLeft + imageWidth + (2 * IMAGE_BUFFER_PADDING);
+            final int twelveNumberTextWidth = formattedNumberWidth - fourNumberTextWidth;
+            final int wholeWidth = (width + twelveNumberTextWidth) - (paddingLeft + paddingRight);
+            mCVCOffset = wholeWidth - cvcTextWidth;
+
+            final int leftPosition = (imageEndPosition + formattedNumberWidth);
+            mExpiryOffset = (((mCVCOffset - leftPosition) - expiryTextWidth) / 2) + leftPosition;
+
+            mSlideDistance = 0 - twelveNumberTextWidth;
         }
+    }
+
+    /**
+     * Everything the render thread backend needs from the main thread to draw a frame, published
+     * whenever any of it changes. What is drawn, and the slide, come from the render thread's own
+     * {@link RenderState} on top of this.
+     */
+    static final class RenderSnapshot {
+
+        private final CardState mState;
+
+        private final CardNumberCheck mNumberCheck;
+
+        private final int mPaddingLeft;
+
+        private final int mPaddingRight;
+
+        private final int mClipRight;
 
-        boolean guess(CharSequence match) {
-            return mPartial.matcher(match).matches();
+        private final int mWidth;
+
+        private final int mHeight;
+
+        private final int[] mDrawableState;
+
+        private final int mBaseline;
+
+        private final int mCursorTop;
+
+        private final int mCursorBottom;
+
+        //the brand & CVC images of every card type, indexed by ordinal
+        private final BrandAtlas.Sprite[] mImages;
+
+        private final BrandAtlas.Sprite[] mCVCImages;
+
+        private final boolean mSliding;
+
+        private final boolean mBlinking;
+
+        private final long mBlinkStart;
+
+        RenderSnapshot(SwipeCardEntry entry) {
+            mState = entry.mState.get();
+            mNumberCheck = entry.mNumberCheck;
+            mPaddingLeft = entry.getPaddingLeft();
+            mPaddingRight = entry.getPaddingRight();
+            mClipRight = entry.getWidth() - 10;
+            mWidth = entry.getWidth();
+            mHeight = entry.getMeasuredHeight();
+            mDrawableState = entry.getDrawableState().clone();
+            mBaseline = entry.getTextBaseline();
+            mCursorTop = mBaseline + (int) Math.floor(entry.mFontMetrics.top);
+            mCursorBottom = mBaseline + (int) Math.ceil(entry.mFontMetrics.descent);
+            mImages = entry.mImages;
+            mCVCImages = entry.mCVCImages;
+            mSliding = entry.mAnimator.isRunning();
+            mBlinking = entry.mCursorBlink.isBlinking() && entry.isFieldVisible();
+            mBlinkStart = entry.mCursorBlink.getStart();
         }
 
-        boolean isCorrectLength(int length) {
-            return mLength == length;
+        int getWidth() {
+            return mWidth;
         }
 
-        boolean hasBreakAt(int index) {
-            for (int num : mBreaks) {
-                if (num == index) {
-                    return true;
-                }
-            }
-            return false;
+        int getHeight() {
+            return mHeight;
         }
 
         /**
-         * Validates the credit card number using the Luhn algorithm, returns true if valid.
-         *
-         * @param number the number to validate.
-         * @return true if valid.
+         * @return the card entry's drawable state (focused, enabled etc.) for its background.
          */
-        boolean validateNumber(CharSequence number) {
-            int sum = 0;
-            final int size = number.length();
-            final int checkDigit = number.charAt(size - 1) - '0';
+        int[] getDrawableState() {
+            return mDrawableState;
+        }
+    }
+
+    /**
+     * The render thread backend's own copy of the entry state. Input submitted from other threads
+     * is handed to it as well as queued for the main thread, and applied to the copy as soon as it
+     * arrives, on top of the last state the main thread published. Typed digits are then drawn
+     * without waiting for the main thread, and once the main thread has applied the same input its
+     * published state takes over again. The slide runs off the render thread's clock, so it starts
+     * as soon as the copy completes the number.
+     * <p/>
+     * {@link #submit(QueuedInput)} may be called from any thread, everything else only from the
+     * render thread.
+     */
+    static final class RenderState {
+
+        private final ConcurrentLinkedQueue<QueuedInput> mSubmitted
+                = new ConcurrentLinkedQueue<QueuedInput>();
+
+        //input applied to the copy that the main thread hasn't published yet, in sequence order
+        private final ArrayList<QueuedInput> mUnconfirmed = new ArrayList<QueuedInput>();
+
+        private final CardInput mInput = new CardInput();
+
+        //false while mInput doesn't hold the latest snapshot plus the unconfirmed input
+        private boolean mInputCurrent = false;
+
+        private final SlideLayout mSlideLayout = new SlideLayout();
+
+        //the number, width & images the slide layout was measured for
+        private String mLayoutNumber;
+
+        private int mLayoutWidth;
+
+        private BrandAtlas.Sprite[] mLayoutImages;
+
+        private RenderSnapshot mSnapshot;
+
+        private CardState mState;
 
-            boolean doubleDigit = true;
+        private float mSlideFrom = 0.0f;
 
-            for (int index = size - 1; --index >= 0; doubleDigit = !doubleDigit) {
-                int digit = number.charAt(index) - '0';
+        private float mSlideTo = Float.NaN;
 
-                if (doubleDigit) {
-                    digit *= 2;
+        private long mSlideStart = 0;
 
-                    if (digit > 9) {
-                        //sum the two digits together,
-                        //the first is always 1 as the highest
-                        // double will be 18
-                        digit = 1 + (digit % 10);
-                    }
+        private long mSlideDuration = 0;
+
+        //true when the slide should jump to its end rather than animate, e.g. after a fill
+        private boolean mJumpSlide = false;
+
+        private long mInputTime = 0;
+
+        void submit(QueuedInput input) {
+            mSubmitted.add(input);
+        }
+
+        /**
+         * Brings the copy up to date with the given snapshot and any input submitted since the
+         * last update.
+         *
+         * @return true if anything changed.
+         */
+        boolean update(RenderSnapshot snapshot, long now, TextPaint textPaint) {
+            final long applied = snapshot.mState.mAppliedSequence;
+            boolean changed = false;
+            mJumpSlide = false;
+            if (snapshot != mSnapshot) {
+                mSnapshot = snapshot;
+                //drop whatever the main thread has applied since
+                while ((!mUnconfirmed.isEmpty()) && (mUnconfirmed.get(0).mSequence <= applied)) {
+                    mUnconfirmed.remove(0);
                 }
-                sum += digit;
+                mInputCurrent = false;
+                changed = true;
             }
 
-            return ((sum + checkDigit) % 10) == 0;
+            final int firstNew = mUnconfirmed.size();
+            QueuedInput input;
+            while ((input = mSubmitted.poll()) != null) {
+                if (input.mSequence <= applied) {
+                    continue;
+                }
+                int index = mUnconfirmed.size();
+                while ((index > 0) && (mUnconfirmed.get(index - 1).mSequence > input.mSequence)) {
+                    index--;
+                }
+                if (index < firstNew) {
+                    //submitted before input already applied to the copy, so start again
+                    mInputCurrent = false;
+                }
+                mUnconfirmed.add(index, input);
+                mInputTime = now;
+                changed = true;
+            }
+            if (!changed) {
+                return false;
+            }
+
+            if (mUnconfirmed.isEmpty()) {
+                mState = snapshot.mState;
+                //the main thread has jumped rather than animated, e.g. a fill or a restore
+                mJumpSlide = !snapshot.mSliding;
+            } else {
+                int from = firstNew;
+                if (!mInputCurrent) {
+                    final CardState state = snapshot.mState;
+                    mInput.setNumberCheck(snapshot.mNumberCheck);
+                    mInput.restore(state.mMode, state.mCardType, state.mCompleted, state.mError,
+                            state.mNumber, state.mNumberFormatted, state.mMonth, state.mYear,
+                            state.mExpiryFormatted, state.mCVC);
+                    mInputCurrent = true;
+                    from = 0;
+                }
+                for (int index = from; index < mUnconfirmed.size(); index++) {
+                    apply(mUnconfirmed.get(index).mInput);
+                }
+                mState = new CardState(mInput, mState, applied);
+            }
+            updateSlide(snapshot, now, textPaint);
+            return true;
+        }
+
+        private void apply(Object input) {
+            if (input instanceof String) {
+                mInput.setNumber((String) input);
+            } else if (input instanceof Fill) {
+                Fill fill = (Fill) input;
+                mInput.fill(fill.mNumber, fill.mExpiryMonth, fill.mExpiryYear, fill.mCVC);
+                mJumpSlide = true;
+            } else {
+                applyKey(mInput, (Integer) input);
+            }
+        }
+
+        private void updateSlide(RenderSnapshot snapshot, long now, TextPaint textPaint) {
+            final CardState state = mState;
+            if ((state.mMode != Mode.NUMBER) && ((snapshot.mWidth != mLayoutWidth)
+                    || (snapshot.mImages != mLayoutImages)
+                    || (!state.mNumber.equals(mLayoutNumber)))) {
+                mSlideLayout.measure(textPaint, state.mNumber, state.mNumberFormatted,
+                        state.mCardType, snapshot.mWidth, snapshot.mPaddingLeft,
+                        snapshot.mPaddingRight,
+                        snapshot.mImages[state.mCardType.ordinal()].getWidth());
+                mLayoutNumber = state.mNumber;
+                mLayoutWidth = snapshot.mWidth;
+                mLayoutImages = snapshot.mImages;
+            }
+
+            final float target = (state.mMode == Mode.NUMBER) ? 0.0f : 1.0f;
+            if (target == mSlideTo) {
+                return;
+            }
+            if ((mJumpSlide) || (Float.isNaN(mSlideTo))) {
+                mSlideFrom = target;
+                mSlideDuration = 0;
+            } else {
+                //carry on from wherever the slide is now
+                mSlideFrom = getSlideFraction(now);
+                mSlideDuration = (long) (SLIDE_DURATION * Math.abs(target - mSlideFrom));
+            }
+            mSlideTo = target;
+            mSlideStart = now;
+        }
+
+        String getNumber() {
+            return mState.mNumber;
+        }
+
+        boolean isSliding(long now) {
+            return now < mSlideStart + mSlideDuration;
+        }
+
+        float getSlideFraction(long now) {
+            if (!isSliding(now)) {
+                return mSlideTo;
+            }
+            float input = (now - mSlideStart) / (float) mSlideDuration;
+            //the same accelerate/decelerate curve as the main thread's ValueAnimator
+            float eased = (float) (Math.cos((input + 1) * Math.PI) / 2.0f) + 0.5f;
+            return mSlideFrom + ((mSlideTo - mSlideFrom) * eased);
+        }
+
+        /**
+         * @return the blink start, restarted by input applied here as it would be when typed.
+         */
+        private long getBlinkStart() {
+            return Math.max(mSnapshot.mBlinkStart, mInputTime);
+        }
+
+        boolean isCursorOn(long now) {
+            return CursorBlink.isCursorOn(mSnapshot.mBlinking, getBlinkStart(), now);
+        }
+
+        /**
+         * @return the time the frame next changes, or Long.MAX_VALUE if nothing is moving.
+         */
+        long getNextChangeTime(long now, long frameInterval) {
+            if (isSliding(now)) {
+                return now + frameInterval;
+            }
+            if (mSnapshot.mBlinking) {
+                return now + CursorBlink.getPhaseDelay(getBlinkStart(), now);
+            }
+            return Long.MAX_VALUE;
+        }
+    }
+
+    /**
+     * A whole card queued by {@link #fill(String, int, int, String)} from another thread.
+     */
+    private static final class Fill {
+
+        private final String mNumber;
+
+        private final int mExpiryMonth;
+
+        private final int mExpiryYear;
+
+        private final String mCVC;
+
+        Fill(String number, int expiryMonth, int expiryYear, String cvc) {
+            mNumber = number;
+            mExpiryMonth = expiryMonth;
+            mExpiryYear = expiryYear;
+            mCVC = cvc;
         }
     }
 
     private Listener mListener;
 
+    /**
+     * The entry state, main thread only.
+     */
+    private final CardInput mInput = new CardInput();
+
+    /**
+     * The card type whose images are loaded.
+     */
     private CardType mCardType;
 
-    private Mode mMode;
+    private final SlideLayout mSlideLayout = new SlideLayout();
 
-    private boolean mCompleted = false;
+    //the brand & CVC images of every card type, indexed by ordinal
+    private BrandAtlas.Sprite[] mImages;
 
-    private boolean mError = false;
+    private BrandAtlas.Sprite[] mCVCImages;
 
-    private float mExpiryOffset = 0.0f;
+    //the screen density the images were loaded for
+    private int mImagesDensity;
 
-    private float mCVCOffset = 0.0f;
+    private BrandAtlas.Sprite mImage;
 
-    private Bitmap mBitmap;
+    private BrandAtlas.Sprite mCVCImage;
 
-    private Bitmap mCVCBitmap;
+    private CardNumberCheck mNumberCheck;
 
     private ValueAnimator mAnimator;
 
-    private Handler mHandler = new Handler(Looper.getMainLooper());
+    private final CursorBlink mCursorBlink = new CursorBlink();
+
+    private boolean mAttached = false;
+
+    /**
+     * Whether the field could be seen when the blink was last scheduled, to tell when scrolling or
+     * a layout has moved it into or out of sight.
+     */
+    private boolean mFieldVisible = false;
+
+    private final Rect mVisibleRect = new Rect();
 
-    private boolean mCursorOn = false;
+    private final FieldMovedListener mFieldMovedListener = new FieldMovedListener();
+
+    /**
+     * False until initialize() has run. View's constructor can already dispatch visibility changes
+     * (e.g. from android:visibility), before the fields of this class have been set up.
+     */
+    private boolean mInitialized = false;
 
     private TextPaint mTextPaint;
 
@@ -186,32 +597,117 @@ public class SwipeCardEntry extends View {
 
     private int mTextOffsetY = 0;
 
+    private Paint.FontMetrics mFontMetrics = new Paint.FontMetrics();
+
+    private int mNumberWidth = 0;
+
+    private int mExpiryWidth = 0;
+
+    private int mCVCWidth = 0;
+
+    private Rect mDirtyRect = new Rect();
+
     private boolean mSetupSlideAfterMeasure = false;
 
+    /**
+     * Redraws the cursor at each blink phase change, the phase itself is worked out from the
+     * animation clock in onDraw so it stays in step with the slide animation.
+     */
+    /**
+     * Told whenever anything in the window scrolls or is laid out, either of which can move the
+     * field into or out of sight without changing its visibility.
+     */
+    private final class FieldMovedListener implements ViewTreeObserver.OnScrollChangedListener,
+            ViewTreeObserver.OnGlobalLayoutListener {
+
+        @Override
+        public void onScrollChanged() {
+            onFieldMoved();
+        }
+
+        @Override
+        public void onGlobalLayout() {
+            onFieldMoved();
+        }
+    }
+
     private Runnable mBlink = new Runnable() {
         @Override
         public void run() {
-            mCursorOn = !mCursorOn;
-            postInvalidate();
-            mHandler.postDelayed(this, BLINK_DURATION);
+            invalidateRegions(DIRTY_CURSOR);
+            updateBlinking();
         }
     };
 
-    private Editable mNumber;
+    private Paint mBitmapPaint;
 
-    private Editable mNumberFormatted;
+    private boolean mTouchDown = false;
 
-    private Editable mMonth;
+    private RecentCards mRecentCards;
 
-    private Editable mYear;
+    private SuggestionListener mSuggestionListener;
 
-    private Editable mExpiryFormatted;
+    private final int[] mSuggestions = new int[MAX_SUGGESTIONS];
 
-    private Editable mCVC;
+    private final int[] mMatches = new int[MAX_SUGGESTIONS];
 
-    private Paint mBitmapPaint;
+    private int mSuggestionCount = 0;
 
-    private boolean mTouchDown = false;
+    //read by submitInput on any thread
+    private volatile CardSurfaceRenderer mSurfaceRenderer;
+
+    private FrameObserver mFrameObserver;
+
+    private CardAccessibilityProvider mAccessibilityProvider;
+
+    private final AtomicReference<CardState> mState = new AtomicReference<CardState>();
+
+    private final ConcurrentLinkedQueue<QueuedInput> mPendingInput
+            = new ConcurrentLinkedQueue<QueuedInput>();
+
+    private final AtomicLong mInputSequence = new AtomicLong();
+
+    //the sequence number of the last queued input applied, main thread only
+    private long mAppliedSequence = 0;
+
+    private final AtomicBoolean mDrainScheduled = new AtomicBoolean(false);
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Applies all input queued from other threads in one go, then publishes & redraws once.
+     */
+    private Runnable mDrainInput = new Runnable() {
+        @Override
+        public void run() {
+            mDrainScheduled.set(false);
+
+            int dirty = 0;
+            boolean invalidateAll = false;
+            QueuedInput queued;
+            while ((queued = mPendingInput.poll()) != null) {
+                mAppliedSequence = Math.max(mAppliedSequence, queued.mSequence);
+                Object input = queued.mInput;
+                if (input instanceof String) {
+                    applyNumber((String) input);
+                    invalidateAll = true;
+                } else if (input instanceof Fill) {
+                    Fill fill = (Fill) input;
+                    applyFill(fill.mNumber, fill.mExpiryMonth, fill.mExpiryYear, fill.mCVC);
+                    invalidateAll = true;
+                } else {
+                    dirty |= applyKeyEvent((Integer) input);
+                }
+            }
+
+            publishState();
+            if (invalidateAll) {
+                postInvalidate();
+            } else {
+                invalidateRegions(dirty);
+            }
+        }
+    };
 
     public SwipeCardEntry(Context context) {
         super(context);
@@ -234,7 +730,7 @@ public class SwipeCardEntry extends View {
         int horizontalPadding = getPaddingLeft() + getPaddingRight();
 
         int textHeight = (int) (mTextPaint.descent() - mTextPaint.ascent());
-        int imageHeight = mBitmap.getHeight();
+        int imageHeight = mImage.getHeight();
 
         int height = Math.max(textHeight, imageHeight);
         mTextOffsetY = (height - textHeight) / 2;
@@ -242,7 +738,7 @@ public class SwipeCardEntry extends View {
 
         int minimumTextWidth = (int) mTextPaint.measureText(NUMBER_HINT);
 
-        int width = mBitmap.getWidth() + (2 * IMAGE_BUFFER_PADDING) + minimumTextWidth
+        int width = mImage.getWidth() + (2 * IMAGE_BUFFER_PADDING) + minimumTextWidth
                 + horizontalPadding;
 
         setMeasuredDimension(resolveSizeAndState(width, widthMeasureSpec, 0),
@@ -267,6 +763,18 @@ public class SwipeCardEntry extends View {
         return true;
     }
 
+    @Override
+    public AccessibilityNodeProvider getAccessibilityNodeProvider() {
+        //the virtual fields are only useful if their text can be set, which needs Lollipop
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+            return super.getAccessibilityNodeProvider();
+        }
+        if (mAccessibilityProvider == null) {
+            mAccessibilityProvider = new CardAccessibilityProvider(this);
+        }
+        return mAccessibilityProvider;
+    }
+
     @Override
     public boolean onTouchEvent(MotionEvent event) {
         super.onTouchEvent(event);
@@ -303,83 +811,75 @@ public class SwipeCardEntry extends View {
     @Override
     protected void onDraw(Canvas canvas) {
         super.onDraw(canvas);
+        if (mSurfaceRenderer != null) {
+            //the render thread draws everything but the background
+            return;
+        }
         canvas.save();
 
+        final CardState state = mState.get();
+
         int paddingLeft = getPaddingLeft();
-        float xPos = paddingLeft + mBitmap.getWidth() + (2 * IMAGE_BUFFER_PADDING);
+        float xPos = getTextStart();
         canvas.clipRect(xPos, 0, getWidth() - 10, getHeight()); //clip 10 px to the right so this doesn't overdraw the background
-        float offsetX = (Float) mAnimator.getAnimatedValue();
+        float offsetX = getSlideOffset();
         xPos += offsetX;
-        int baseline = getPaddingTop() + mTextOffsetY - (int) mTextPaint.ascent();
+        int baseline = getTextBaseline();
 
-        int length = mNumberFormatted.length();
-        if (length == 0) {
-            mHintPaint.setAlpha(0xFF);
-            canvas.drawText(NUMBER_HINT, xPos, baseline, mHintPaint);
+        drawFields(canvas, state, xPos, mSlideLayout.mExpiryOffset + offsetX,
+                mSlideLayout.mCVCOffset + offsetX, baseline, mAnimator.getAnimatedFraction(),
+                mAnimator.isRunning(), mTextPaint, mHintPaint, mErrorPaint);
+
+        canvas.restore();
+        if (state.mMode == Mode.CVC) {
+            float yPos = (getMeasuredHeight() - mCVCImage.getHeight()) / 2;
+            mCVCImage.draw(canvas, IMAGE_BUFFER_PADDING + paddingLeft, yPos, mBitmapPaint);
         } else {
-            if ((mError) && (mMode == Mode.NUMBER)) {
-                canvas.drawText(mNumberFormatted, 0, length, xPos, baseline, mErrorPaint);
-            } else {
-                canvas.drawText(mNumberFormatted, 0, length, xPos, baseline, mTextPaint);
-            }
+            float yPos = (getMeasuredHeight() - mImage.getHeight()) / 2;
+            mImage.draw(canvas, IMAGE_BUFFER_PADDING + paddingLeft, yPos, mBitmapPaint);
         }
 
-        if ((mAnimator.isRunning()) || (mMode != Mode.NUMBER)) {
-            mHintPaint.setAlpha((int) (mAnimator.getAnimatedFraction() * 0xFF));
+        if (mCursorBlink.isCursorOn(AnimationUtils.currentAnimationTimeMillis())) {
+            int cursorPosition = getCursorPosition(state, mTextPaint, xPos,
+                    mSlideLayout.mExpiryOffset + offsetX, mSlideLayout.mCVCOffset + offsetX);
+            canvas.drawRect(cursorPosition, baseline + mFontMetrics.top, cursorPosition + 1,
+                    baseline + mFontMetrics.descent, mTextPaint);
+        }
 
-            if (mExpiryFormatted.length() == 0) {
-                canvas.drawText(EXPIRY_HINT, mExpiryOffset + offsetX, baseline, mHintPaint);
-                canvas.drawText(mCardType.mCVCHint, mCVCOffset + offsetX, baseline, mHintPaint);
-            } else {
-                if ((mError) && ((mMode == Mode.EXPIRY_YEAR) || (mMode == Mode.EXPIRY_MONTH))) {
-                    canvas.drawText(mExpiryFormatted, 0, mExpiryFormatted.length(),
-                            mExpiryOffset + offsetX, baseline, mErrorPaint);
-                } else {
-                    canvas.drawText(mExpiryFormatted, 0, mExpiryFormatted.length(),
-                            mExpiryOffset + offsetX, baseline, mTextPaint);
-                }
+        if (mFrameObserver != null) {
+            mFrameObserver.onFrameDrawn(state.mNumber);
+        }
+    }
 
-                if (mCVC.length() == 0) {
-                    canvas.drawText(mCardType.mCVCHint, mCVCOffset + offsetX, baseline, mHintPaint);
-                } else {
-                    canvas.drawText(mCVC, 0, mCVC.length(), mCVCOffset + offsetX, baseline,
-                            mTextPaint);
-                }
-            }
+    @Override
+    protected void onConfigurationChanged(Configuration newConfig) {
+        super.onConfigurationChanged(newConfig);
+        if ((!mInitialized) || (getResources().getDisplayMetrics().densityDpi == mImagesDensity)) {
+            return;
+        }
+        //e.g. the display size changed, so the images are drawn at a different size
+        loadImages();
+        if (mInput.getMode() != Mode.NUMBER) {
+            //the text starts after the image, so the slide is laid out again
+            mSetupSlideAfterMeasure = true;
         }
+        requestLayout();
+        invalidate();
+        publishRenderSnapshot();
+    }
 
-        canvas.restore();
-        if (mMode == Mode.CVC) {
-            float yPos = (getMeasuredHeight() - mCVCBitmap.getHeight()) / 2;
-            canvas.drawBitmap(mCVCBitmap, IMAGE_BUFFER_PADDING + paddingLeft, yPos, mBitmapPaint);
-        } else {
-            float yPos = (getMeasuredHeight() - mBitmap.getHeight()) / 2;
-            canvas.drawBitmap(mBitmap, IMAGE_BUFFER_PADDING + paddingLeft, yPos, mBitmapPaint);
-        }
-
-        if (mCursorOn) {
-            float cursorPosition;
-            switch (mMode) {
-                case NUMBER:
-                    cursorPosition = mTextPaint
-                            .measureText(mNumberFormatted, 0, mNumberFormatted.length());
-                    cursorPosition += xPos;
-                    break;
-                case EXPIRY_MONTH:
-                case EXPIRY_YEAR:
-                    cursorPosition = mTextPaint
-                            .measureText(mExpiryFormatted, 0, mExpiryFormatted.length());
-                    cursorPosition += mExpiryOffset + offsetX;
-                    break;
-                default: //CVC
-                    cursorPosition = mTextPaint.measureText(mCVC, 0, mCVC.length());
-                    cursorPosition += mCVCOffset + offsetX;
-            }
+    @Override
+    protected void drawableStateChanged() {
+        super.drawableStateChanged();
+        //the render thread draws its own copy of the background, so needs the new state
+        publishRenderSnapshot();
+    }
 
-            Paint.FontMetrics metrics = mTextPaint.getFontMetrics();
-            canvas.drawRect(cursorPosition, baseline + metrics.top, cursorPosition + 1,
-                    baseline + metrics.descent, mTextPaint);
-        }
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        updateFieldWidths();
+        publishRenderSnapshot();
     }
 
     @Override
@@ -418,6 +918,41 @@ public class SwipeCardEntry extends View {
         }
     }
 
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        mAttached = true;
+        ViewTreeObserver observer = getViewTreeObserver();
+        observer.addOnScrollChangedListener(mFieldMovedListener);
+        observer.addOnGlobalLayoutListener(mFieldMovedListener);
+        updateBlinking();
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        mAttached = false;
+        removeFieldMovedListener();
+        updateBlinking();
+        if ((mAnimator != null) && (mAnimator.isRunning())) {
+            //jump to the end so the animator doesn't hold on to a detached view, only while
+            //running as end() on a finished reverse() would jump to the slid across side
+            mAnimator.end();
+        }
+        super.onDetachedFromWindow();
+    }
+
+    @Override
+    protected void onVisibilityChanged(View changedView, int visibility) {
+        super.onVisibilityChanged(changedView, visibility);
+        onShownChanged();
+    }
+
+    @Override
+    protected void onWindowVisibilityChanged(int visibility) {
+        super.onWindowVisibilityChanged(visibility);
+        onShownChanged();
+    }
+
     @Override
     protected void onFocusChanged(boolean focused, int direction, Rect previouslyFocusedRect) {
         super.onFocusChanged(focused, direction, previouslyFocusedRect);
@@ -432,16 +967,16 @@ public class SwipeCardEntry extends View {
     protected Parcelable onSaveInstanceState() {
         Bundle bundle = new Bundle();
         bundle.putParcelable("superstate",super.onSaveInstanceState());
-        bundle.putInt("mode", mMode.ordinal());
-        bundle.putInt("cardType", mCardType.ordinal());
-        bundle.putBoolean("completed", mCompleted);
-        bundle.putBoolean("error", mError);
-        bundle.putString("number", mNumber.toString());
-        bundle.putString("numberFormatted", mNumberFormatted.toString());
-        bundle.putString("month", mMonth.toString());
-        bundle.putString("year", mYear.toString());
-        bundle.putString("expiryFormatted", mExpiryFormatted.toString());
-        bundle.putString("cvc", mCVC.toString());
+        bundle.putInt("mode", mInput.getMode().ordinal());
+        bundle.putInt("cardType", mInput.getCardType().ordinal());
+        bundle.putBoolean("completed", mInput.isCompleted());
+        bundle.putBoolean("error", mInput.isError());
+        bundle.putString("number", mInput.getNumber().toString());
+        bundle.putString("numberFormatted", mInput.getNumberFormatted().toString());
+        bundle.putString("month", mInput.getMonth().toString());
+        bundle.putString("year", mInput.getYear().toString());
+        bundle.putString("expiryFormatted", mInput.getExpiryFormatted().toString());
+        bundle.putString("cvc", mInput.getCVC().toString());
 
         return bundle;
     }
@@ -451,18 +986,15 @@ public class SwipeCardEntry extends View {
         if (state instanceof Bundle) {
             Bundle bundle = (Bundle) state;
 
-            mMode = Mode.values()[bundle.getInt("mode")];
-            setCardType(CardType.values()[bundle.getInt("cardType")]);
-            mNumber = new SpannableStringBuilder(bundle.getString("number"));
-            mNumberFormatted = new SpannableStringBuilder(bundle.getString("numberFormatted"));
-
-            mCompleted = bundle.getBoolean("completed");
-            mError = bundle.getBoolean("error");
-            mMonth = new SpannableStringBuilder(bundle.getString("month"));
-            mYear = new SpannableStringBuilder(bundle.getString("year"));
-            mExpiryFormatted = new SpannableStringBuilder(bundle.getString("expiryFormatted"));
-            mCVC = new SpannableStringBuilder(bundle.getString("cvc"));
-            mSetupSlideAfterMeasure = (mMode.ordinal() > Mode.NUMBER.ordinal());
+            mInput.restore(Mode.values()[bundle.getInt("mode")],
+                    CardType.values()[bundle.getInt("cardType")], bundle.getBoolean("completed"),
+                    bundle.getBoolean("error"), bundle.getString("number"),
+                    bundle.getString("numberFormatted"), bundle.getString("month"),
+                    bundle.getString("year"), bundle.getString("expiryFormatted"),
+                    bundle.getString("cvc"));
+            setCardType(mInput.getCardType());
+            mSetupSlideAfterMeasure = (mInput.getMode().ordinal() > Mode.NUMBER.ordinal());
+            publishState(false);
 
             state = bundle.getParcelable("superstate");
         }
@@ -481,81 +1013,203 @@ public class SwipeCardEntry extends View {
         return oldListener;
     }
 
+    /**
+     * Replaces the current recent cards (if any) with the given recent cards, which are then
+     * matched against the number as it is entered, and passed to the suggestion listener. This
+     * must be called on the main thread.
+     *
+     * @param recentCards the recent cards (or null).
+     * @return the old recent cards.
+     */
+    public RecentCards setRecentCards(RecentCards recentCards) {
+        RecentCards oldRecentCards = mRecentCards;
+        mRecentCards = recentCards;
+        //the indexes are into the old recent cards, so always tell the listener
+        mSuggestionCount = -1;
+        updateSuggestions(mState.get());
+        return oldRecentCards;
+    }
+
+    /**
+     * Replaces the current suggestion listener (if any) with the given listener.
+     *
+     * @param listener the new listener (or null).
+     * @return the old listener.
+     */
+    public SuggestionListener setSuggestionListener(SuggestionListener listener) {
+        SuggestionListener oldListener = mSuggestionListener;
+        mSuggestionListener = listener;
+        return oldListener;
+    }
+
+    /**
+     * Replaces the current number check (if any) with the given check, which can reject numbers
+     * (e.g. blocklisted BINs) while they are being entered, marking them as an error.
+     *
+     * @param check the new check (or null).
+     * @return the old check.
+     */
+    public CardNumberCheck setCardNumberCheck(CardNumberCheck check) {
+        mNumberCheck = check;
+        publishRenderSnapshot();
+        return mInput.setNumberCheck(check);
+    }
+
+    /**
+     * Replaces the current frame observer (if any) with the given observer, which is told about
+     * every frame drawn from then on. Must be called on the main thread.
+     *
+     * @param observer the new observer (or null).
+     */
+    void setFrameObserver(FrameObserver observer) {
+        mFrameObserver = observer;
+        if (mSurfaceRenderer != null) {
+            mSurfaceRenderer.setFrameObserver(observer);
+        }
+    }
+
+    /**
+     * Hands drawing over to the given render thread backend, or back to onDraw if null. Only the
+     * background is then drawn by this view, the render thread draws its own copy of it too as the
+     * surface is behind the window.
+     *
+     * @param renderer the render thread backend (or null).
+     */
+    void setSurfaceRenderer(CardSurfaceRenderer renderer) {
+        mSurfaceRenderer = renderer;
+        if (renderer != null) {
+            renderer.setPaints(mTextPaint, mHintPaint, mErrorPaint, mBitmapPaint);
+            Drawable background = getBackground();
+            Drawable.ConstantState backgroundState = (background != null)
+                    ? background.getConstantState() : null;
+            renderer.setBackground((backgroundState != null)
+                    ? backgroundState.newDrawable(getResources()).mutate() : null);
+            renderer.setFrameObserver(mFrameObserver);
+            publishRenderSnapshot();
+        }
+        postInvalidate();
+    }
+
+    /**
+     * Replaces the current keystroke trace (if any) with the given trace. The entry's current
+     * state is recorded into it, for replays to start from, then every typed digit and delete, and
+     * every number set (by {@link #setNumber(String)}, fill or a swipe). The old trace is finished
+     * with the entry's current state, ready to be written out and replayed. Must be called on the
+     * main thread.
+     *
+     * @param trace the trace to record into (or null to stop recording).
+     * @return the old trace.
+     */
+    public KeystrokeTrace setKeystrokeTrace(KeystrokeTrace trace) {
+        KeystrokeTrace oldTrace = mInput.setTrace(trace);
+        if (oldTrace != null) {
+            oldTrace.finish(mInput);
+        }
+        return oldTrace;
+    }
+
     /**
      * Clears CVC, Expiry and Number fields and sets the number to the given parameter. If this is
-     * valid then we the state will move to expiry month to fill in the rest of the details.
+     * valid then we the state will move to expiry month to fill in the rest of the details. Any
+     * characters other than digits (e.g. spaces) are ignored, as are digits past the 19th.
+     * <p/>
+     * This may be called from any thread, off the main thread the number is queued and applied
+     * on the main thread along with any other pending input. Either way it is applied after any
+     * input already queued.
      *
      * @param number the number to fill in. (Not null)
      */
     public void setNumber(String number) {
-        mNumber.clear();
-        mMonth.clear();
-        mYear.clear();
-        mCVC.clear();
-        mNumberFormatted.clear();
-        mExpiryFormatted.clear();
-
-        mCardType = CardType.UNKNOWN;
-        mMode = Mode.NUMBER;
-        mNumber.append(number);
-
-        mNumberFormatted.append(number);
-
-        if (mNumber.length() >= 2) {
-            CharSequence firstTwoDigits = mNumber.subSequence(0,2);
-            setCardType(guessCardType(firstTwoDigits));
-            if (mCardType == CardType.UNKNOWN) {
-                mNumber.clear();
-                mNumberFormatted.clear();
-                mNumber.append(firstTwoDigits);
-                mNumberFormatted.append(firstTwoDigits);
-                mError = true;
-            }
+        if (Looper.myLooper() != Looper.getMainLooper()) {
+            submitInput(number);
+            return;
         }
-
-        for (int index = mCardType.mBreaks.length; --index >= 0; ) {
-            int space = mCardType.mBreaks[index];
-            if (mNumberFormatted.length() > space) {
-                mNumberFormatted.insert(space, " ");
-            }
+        if (drainAfterPendingInput(number)) {
+            return;
         }
 
-        if (mCardType.isCorrectLength(mNumber.length())) {
-            validateNumber();
-        }
+        applyNumber(number);
+        publishState();
+        postInvalidate();
+    }
 
-        checkIsCompleted();
+    /**
+     * Fills in the whole card at once, e.g. from an autofill service or password manager. Unlike
+     * typing it in, this is a single state update: the number is validated once, the slide jumps
+     * straight to the expiry & CVC without animating, and the view is redrawn once. As when typed,
+     * the expiry & CVC are only filled in if the number is valid and the expiry hasn't passed.
+     * <p/>
+     * This may be called from any thread, off the main thread the card is queued and filled in
+     * on the main thread along with any other pending input. Either way it is filled in after any
+     * input already queued.
+     *
+     * @param number      the card number, any spaces or dashes are ignored. (Not null)
+     * @param expiryMonth the expiry month (1 - 12), or 0 to leave the expiry & CVC empty.
+     * @param expiryYear  the expiry year, either all 4 digits or just the last 2.
+     * @param cvc         the CVC (or null).
+     */
+    public void fill(String number, int expiryMonth, int expiryYear, String cvc) {
+        if (Looper.myLooper() != Looper.getMainLooper()) {
+            submitInput(new Fill(number, expiryMonth, expiryYear, cvc));
+            return;
+        }
+        if (drainAfterPendingInput(new Fill(number, expiryMonth, expiryYear, cvc))) {
+            return;
+        }
 
+        applyFill(number, expiryMonth, expiryYear, cvc);
+        publishState();
         postInvalidate();
     }
 
+    /**
+     * Queues a key press (a {@link KeyEvent} key code, e.g. {@link KeyEvent#KEYCODE_0} or
+     * {@link KeyEvent#KEYCODE_DEL}) to be applied as if typed. This may be called from any thread,
+     * queued input is applied in batches on the main thread. With {@link SurfaceSwipeCardEntry}
+     * it is also applied & drawn on the render thread straight away.
+     *
+     * @param keyCode the key code to apply.
+     */
+    public void submitKeyEvent(int keyCode) {
+        submitInput(keyCode);
+    }
+
     /**
      * @return true if the card entry has been completed (and valid), false otherwise.
      */
     public boolean isCompleted() {
-        return mCompleted;
+        return mState.get().mCompleted;
     }
 
     /**
      * @return the card number, this may or may not be valid, check with isCompleted.
      */
     public String getNumber() {
-        return mNumber.toString();
+        return mState.get().mNumber;
+    }
+
+    /**
+     * @return the card number packed into a {@link CardNumber}, this may or may not be valid,
+     * check with isCompleted.
+     */
+    public CardNumber getCardNumber() {
+        return mState.get().mCardNumber;
     }
 
     /**
      * @return the CVC, this may or may not be valid, check with isCompleted.
      */
     public String getCVC() {
-        return mCVC.toString();
+        return mState.get().mCVC;
     }
 
     /**
      * @return the expiry month (1 >= expiry month >= 12), or 0 if not set.
      */
     public int getExpiryMonth() {
-        if (mMode.ordinal() > Mode.EXPIRY_MONTH.ordinal()) {
-            return Integer.parseInt(mMonth.toString());
+        CardState state = mState.get();
+        if (state.mMode.ordinal() > Mode.EXPIRY_MONTH.ordinal()) {
+            return Integer.parseInt(state.mMonth);
         } else {
             return 0;
         }
@@ -565,13 +1219,42 @@ public class SwipeCardEntry extends View {
      * @return the last 2 digits of the expiry year (so 2018 would be 18), or 0 if not set.
      */
     public int getExpiryYear() {
-        if (mMode.ordinal() > Mode.EXPIRY_YEAR.ordinal()) {
-            return Integer.parseInt(mYear.toString());
+        CardState state = mState.get();
+        if (state.mMode.ordinal() > Mode.EXPIRY_YEAR.ordinal()) {
+            return Integer.parseInt(state.mYear);
         } else {
             return 0;
         }
     }
 
+    private void applyNumber(String number) {
+        mInput.setNumber(number);
+        setCardType(mInput.getCardType());
+        if (mInput.getMode() != Mode.NUMBER) {
+            startSlide();
+        }
+    }
+
+    private void applyFill(String number, int expiryMonth, int expiryYear, String cvc) {
+        mInput.fill(number, expiryMonth, expiryYear, cvc);
+        setCardType(mInput.getCardType());
+        if (mInput.getMode() == Mode.NUMBER) {
+            //not accepted, so slide straight back if the previous card had slid across
+            if (mAnimator.getAnimatedFraction() != 0.0f) {
+                mAnimator.cancel();
+                mAnimator.setCurrentPlayTime(0);
+            }
+            return;
+        }
+
+        //jump to the end of the slide rather than animating it
+        startSlide();
+        if (getMeasuredWidth() == 0) {
+            mSetupSlideAfterMeasure = true;
+        }
+        mAnimator.end();
+    }
+
     private void initialize(Context context, AttributeSet attrs, int defStyle) {
         if (isInEditMode()) {
             return;
@@ -628,260 +1311,557 @@ public class SwipeCardEntry extends View {
         mErrorPaint = new TextPaint(mTextPaint);
         mErrorPaint.setColor(errorColor);
 
-        mNumber = new SpannableStringBuilder();
-        mMonth = new SpannableStringBuilder();
-        mYear = new SpannableStringBuilder();
-        mCVC = new SpannableStringBuilder();
-        mNumberFormatted = new SpannableStringBuilder();
-        mExpiryFormatted = new SpannableStringBuilder();
+        mTextPaint.getFontMetrics(mFontMetrics);
+        updateFieldWidths();
 
         mAnimator = ValueAnimator.ofFloat(0.0f, 0.0f);
-        mAnimator.setDuration(500);
+        mAnimator.setDuration(SLIDE_DURATION);
         mAnimator.addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
             @Override
             public void onAnimationUpdate(ValueAnimator animation) {
                 postInvalidate();
             }
         });
+        mAnimator.addListener(new AnimatorListenerAdapter() {
+            @Override
+            public void onAnimationEnd(Animator animation) {
+                publishRenderSnapshot();
+                //the cursor is redrawn with every frame while sliding, so blinking is resumed here
+                updateBlinking();
+            }
+        });
 
-        mBitmapPaint = new Paint();
+        //the brand images are scaled from the atlas's density to the screen's as they're drawn
+        mBitmapPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
         mBitmapPaint.setStyle(Paint.Style.FILL_AND_STROKE);
 
+        loadImages();
         setCardType(CardType.UNKNOWN);
-        mMode = Mode.NUMBER;
+        publishState();
+        mInitialized = true;
     }
 
 
-    private void processKeyEvent(int keyCode) {
+    /**
+     * Applies a key press on the main thread, after any input still queued from other threads.
+     */
+    void processKeyEvent(int keyCode) {
+        if (drainAfterPendingInput(keyCode)) {
+            return;
+        }
+
+        int dirty = applyKeyEvent(keyCode);
+        publishState();
+        invalidateRegions(dirty);
+    }
+
+    /**
+     * Applies a key press to the (main thread only) editable state.
+     *
+     * @return the DIRTY_* regions that need redrawing.
+     */
+    private int applyKeyEvent(int keyCode) {
+        final Mode oldMode = mInput.getMode();
+        final CardType oldCardType = mInput.getCardType();
+
         if (keyCode == KeyEvent.KEYCODE_BACK) {
             clearFocus();
-        } else if (keyCode == KeyEvent.KEYCODE_DEL) {
-            startBlinking();
-            switch (mMode) {
-                case CVC:
-                    if (mCVC.length() > 0) {
-                        removeLastChar(mCVC);
-                        break;
-                    } else {
-                        //we are going back to number mode:
-                        mMode = Mode.EXPIRY_YEAR;
-                    }
-                case EXPIRY_YEAR:
-                    if (mYear.length() > 0) {
-                        removeLastChar(mYear);
-                        removeLastChar(mExpiryFormatted);
-                        break;
-                    } else {
-                        //we are going back to number mode:
-                        removeLastChar(mExpiryFormatted);
-                        mMode = Mode.EXPIRY_MONTH;
-                    }
-                case EXPIRY_MONTH:
-                    if (mMonth.length() > 0) {
-                        removeLastChar(mMonth);
-                        removeLastChar(mExpiryFormatted);
-                        break;
-                    } else {
-                        //we are going back to number mode:
-                        mMode = Mode.NUMBER;
-                        mAnimator.reverse();
-                    }
-                case NUMBER:
-                    if (mNumber.length() > 0) {
-                        removeLastChar(mNumber);
-                        removeLastChar(mNumberFormatted);
-                        if (mCardType.hasBreakAt(mNumber.length() + 1)) {
-                            removeLastChar(mNumberFormatted);
-                        }
-
-                        if (mNumber.length() < 2) {
-                            setCardType(CardType.UNKNOWN);
-                        }
-                    }
-                    break;
+        } else {
+            if ((keyCode == KeyEvent.KEYCODE_DEL) || (!mInput.isError())) {
+                startBlinking();
             }
-            mError = false;
-            checkIsCompleted();
-        } else if (!mError) {
-            startBlinking();
+            applyKey(mInput, keyCode);
+        }
+
+        final Mode mode = mInput.getMode();
+        setCardType(mInput.getCardType());
+        if ((oldMode == Mode.NUMBER) && (mode != Mode.NUMBER)) {
+            //the number is complete & valid
+            startSlide();
+        } else if ((oldMode != Mode.NUMBER) && (mode == Mode.NUMBER)) {
+            //deleted back into the number
+            mAnimator.reverse();
+        }
+
+        int dirty = getFieldRegion(oldMode) | getFieldRegion(mode);
+        if (oldCardType != mCardType) {
+            //the brand image changes, and with it the breaks in the number
+            dirty |= DIRTY_IMAGE | DIRTY_NUMBER;
+        } else if ((oldMode == Mode.CVC) != (mode == Mode.CVC)) {
+            //swapping between the brand & CVC images
+            dirty |= DIRTY_IMAGE;
+        }
+        return dirty;
+    }
+
+    /**
+     * Applies a typed digit or delete to the given input, shared with the render thread backend's
+     * copy. Digits are ignored while in error.
+     */
+    private static void applyKey(CardInput input, int keyCode) {
+        if (keyCode == KeyEvent.KEYCODE_DEL) {
+            input.applyDelete();
+        } else if (!input.isError()) {
             int number = keyCode - KeyEvent.KEYCODE_0;
             if ((number >= 0) && (number <= 9)) {
-                String numberAsString = Integer.toString(number);
-                switch (mMode) {
-                    case NUMBER:
-                        mNumber.append(numberAsString);
-                        mNumberFormatted.append(numberAsString);
-                        int length = mNumber.length();
-                        if (mCardType.hasBreakAt(length)) {
-                            mNumberFormatted.append(' ');
-                        }
-                        if (length < 2) {
-                            //do nothing
-                        } else if (length == 2) {
-                            setCardType(guessCardType(mNumber));
-                            if (mCardType == CardType.UNKNOWN) {
-                                mError = true;
-                            }
-                        } else if (mCardType.isCorrectLength(length)) {
-                            validateNumber();
-                        }
-                        break;
-                    case EXPIRY_MONTH:
-                        if (mMonth.length() == 0) {
-                            if ((number == 0) || (number == 1)) {
-                                mMonth.append(numberAsString);
-                                mExpiryFormatted.append(numberAsString);
-                            }
-                        } else if (mMonth.length() == 1) {
-                            if (mMonth.charAt(0) == '1') {
-                                if ((number == 0) || (number == 1) || (number == 2)) {
-                                    mMonth.append(numberAsString);
-                                    mExpiryFormatted.append(numberAsString);
-                                }
-                            } else if (number != 0) {
-                                mMonth.append(numberAsString);
-                                mExpiryFormatted.append(numberAsString);
-                            }
-
-                            if (mMonth.length() == 2) {
-                                int month = Integer.parseInt(mMonth.toString());
-                                if ((month >= 1) && (month <= 12)) {
-                                    mExpiryFormatted.append('/');
-                                    mMode = Mode.EXPIRY_YEAR;
-                                }
-                            }
-
-                        }
-                        break;
-                    case EXPIRY_YEAR:
-                        final int yearLength = mYear.length();
-
-                        if (yearLength == 0) {
-                            if (number >= 1) {
-                                mYear.append(numberAsString);
-                                mExpiryFormatted.append(numberAsString);
-                            }
-                        } else if (yearLength == 1) {
-                            mYear.append(numberAsString);
-
-                            Calendar calendar = Calendar.getInstance();
-                            int actualYear = calendar.get(Calendar.YEAR);
-                            int enteredYear = 2000 + Integer.parseInt(mYear.toString());
-
-                            if (actualYear == enteredYear) {
-                                //validate the month
-                                int actualMonth = calendar.get(Calendar.MONTH) + 1;
-                                int enteredMonth = Integer.parseInt(mMonth.toString());
-                                if (actualMonth <= enteredMonth) {
-                                    mExpiryFormatted.append(numberAsString);
-                                    mMode = Mode.CVC;
-                                } else {
-                                    removeLastChar(mYear);
-                                }
-                            } else if (actualYear < enteredYear) {
-                                mExpiryFormatted.append(numberAsString);
-                                mMode = Mode.CVC;
-                            } else {
-                                removeLastChar(mYear);
-                            }
-                        }
-                        break;
-                    case CVC:
-                        if (mCVC.length() < mCardType.mCVCLength) {
-                            mCVC.append(numberAsString);
-                            checkIsCompleted();
-                        }
-                        break;
-                }
+                input.applyDigit(number);
             }
         }
+    }
 
-        postInvalidate();
+    private void submitInput(Object input) {
+        final QueuedInput queued = new QueuedInput(mInputSequence.incrementAndGet(), input);
+        mPendingInput.add(queued);
+        //drawn by the render thread backend (if any) straight away, without waiting for the drain
+        final CardSurfaceRenderer renderer = mSurfaceRenderer;
+        if (renderer != null) {
+            renderer.submitInput(queued);
+        }
+        //only the first input of a batch posts to the main thread
+        if (mDrainScheduled.compareAndSet(false, true)) {
+            mMainHandler.post(mDrainInput);
+        }
     }
 
-    private CardType guessCardType(CharSequence cardType) {
-        for (CardType type : CardType.values()) {
-            if (type.guess(cardType)) {
-                return type;
-            }
+    /**
+     * Called on the main thread before applying input directly. If input queued from other threads
+     * is still waiting to be drained, the given input is queued behind it and the queue drained
+     * now, so the final state doesn't depend on when the drain would have run.
+     *
+     * @return true if the input has been applied, false if nothing is queued.
+     */
+    private boolean drainAfterPendingInput(Object input) {
+        if (mPendingInput.isEmpty()) {
+            return false;
+        }
+        mPendingInput.add(new QueuedInput(mInputSequence.incrementAndGet(), input));
+        mMainHandler.removeCallbacks(mDrainInput);
+        mDrainInput.run();
+        return true;
+    }
+
+    private void publishState() {
+        publishState(true);
+    }
+
+    /**
+     * Publishes the editable state, then tells the listener if it has gone to/from completed, so
+     * the getters already return the new state from within the callback.
+     *
+     * @param notify false to publish without telling the listener, e.g. when restoring.
+     */
+    private void publishState(boolean notify) {
+        final CardState previous = mState.get();
+        final CardState state = new CardState(mInput, previous, mAppliedSequence);
+        mState.set(state);
+        if ((previous == null) || (previous.mCardNumber != state.mCardNumber)) {
+            updateSuggestions(state);
         }
+        publishRenderSnapshot();
 
-        return CardType.UNKNOWN;
+        if ((notify) && (previous != null) && (previous.mCompleted != state.mCompleted)
+                && (mListener != null)) {
+            mListener.onCardEntryCompleted(state.mCompleted);
+        }
+    }
+
+    /**
+     * Matches the recent cards against the number, and tells the listener if they have changed.
+     */
+    private void updateSuggestions(CardState state) {
+        int count = 0;
+        if ((mRecentCards != null) && (state != null)) {
+            count = mRecentCards.findMatches(state.mCardNumber,
+                    state.mCardType.isCorrectLength(state.mCardNumber.length()), mMatches);
+        }
+
+        boolean changed = (count != mSuggestionCount);
+        for (int index = 0; (!changed) && (index < count); index++) {
+            changed = (mMatches[index] != mSuggestions[index]);
+        }
+        if (!changed) {
+            return;
+        }
+
+        System.arraycopy(mMatches, 0, mSuggestions, 0, count);
+        mSuggestionCount = count;
+        if (mSuggestionListener != null) {
+            mSuggestionListener.onSuggestionsChanged(mRecentCards, mSuggestions, count);
+        }
+    }
+
+    private void publishRenderSnapshot() {
+        if (mSurfaceRenderer != null) {
+            mSurfaceRenderer.publish(new RenderSnapshot(this));
+        }
     }
 
     private void setCardType(CardType type) {
         if (mCardType != type) {
             mCardType = type;
             if (type != null) {
-                mBitmap = BitmapFactory.decodeResource(getResources(), type.mResource);
-                mCVCBitmap = BitmapFactory.decodeResource(getResources(), type.mCVCResource);
+                mImage = mImages[type.ordinal()];
+                mCVCImage = mCVCImages[type.ordinal()];
             }
         }
     }
 
-    private void removeLastChar(Editable editable) {
-        int length = editable.length() - 1;
-        editable.delete(length, length + 1);
+    /**
+     * Loads the brand & CVC images of every card type for the current screen density, so the
+     * render thread backend can draw whichever card type its own copy of the state reaches.
+     */
+    private void loadImages() {
+        final BrandAtlas atlas = BrandAtlas.get(getResources());
+        mImagesDensity = getResources().getDisplayMetrics().densityDpi;
+        mImages = new BrandAtlas.Sprite[BRAND_IMAGES.length];
+        mCVCImages = new BrandAtlas.Sprite[CVC_IMAGES.length];
+        for (int index = 0; index < BRAND_IMAGES.length; index++) {
+            mImages[index] = atlas.getSprite(getResources(), BRAND_IMAGES[index]);
+            mCVCImages[index] = atlas.getSprite(getResources(), CVC_IMAGES[index]);
+        }
+        if (mCardType != null) {
+            mImage = mImages[mCardType.ordinal()];
+            mCVCImage = mCVCImages[mCardType.ordinal()];
+        }
     }
 
     private void startBlinking() {
-        mHandler.removeCallbacks(mBlink);
-        mHandler.postDelayed(mBlink, BLINK_DURATION);
-        mCursorOn = true;
-        postInvalidate();
+        mCursorBlink.start(AnimationUtils.currentAnimationTimeMillis());
+        updateBlinking();
+        invalidateRegions(DIRTY_CURSOR);
+        publishRenderSnapshot();
     }
 
     private void stopBlinking() {
-        mHandler.removeCallbacks(mBlink);
-        mCursorOn = false;
-        postInvalidate();
+        mCursorBlink.stop();
+        updateBlinking();
+        invalidateRegions(DIRTY_CURSOR);
+        publishRenderSnapshot();
+    }
+
+    @SuppressWarnings("deprecation")
+    private void removeFieldMovedListener() {
+        ViewTreeObserver observer = getViewTreeObserver();
+        observer.removeOnScrollChangedListener(mFieldMovedListener);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            observer.removeOnGlobalLayoutListener(mFieldMovedListener);
+        } else {
+            observer.removeGlobalOnLayoutListener(mFieldMovedListener);
+        }
+    }
+
+    /**
+     * @return true if the field can actually be seen, so there is any point in blinking/animating.
+     * Being shown isn't enough, it may also be scrolled or clipped right out of sight.
+     */
+    private boolean isFieldVisible() {
+        return mAttached && (getWindowVisibility() == VISIBLE) && isShown()
+                && getGlobalVisibleRect(mVisibleRect);
+    }
+
+    /**
+     * Called when the field may have moved on screen, only acts once it comes into or goes out of
+     * sight, as scrolling calls this for every step.
+     */
+    private void onFieldMoved() {
+        if ((mInitialized) && (isFieldVisible() != mFieldVisible)) {
+            onShownChanged();
+        }
     }
 
-    private int setupSlideValues() {
-        //calculate the animation and animate
-        final int numberLength = mCardType.mLength;
-        final int lastBreakIndex = mCardType.mBreaks[mCardType.mBreaks.length -1];
-        final int fourNumberTextWidth = (int) mTextPaint
-                .measureText(mNumber, lastBreakIndex, numberLength);
-        final int expiryTextWidth = (int) mTextPaint.measureText(EXPIRY_HINT);
-        final int cvcTextWidth = (int) mTextPaint.measureText(mCardType.mCVCHint);
-        final int formattedNumberWidth = (int) mTextPaint.measureText(mNumberFormatted, 0,
-                mNumberFormatted.length());
+    /**
+     * Schedules the next blink if the cursor should be blinking & can be seen, otherwise makes sure
+     * nothing is pending. While the slide animation runs each frame redraws the cursor anyway.
+     */
+    private void updateBlinking() {
+        if (!mInitialized) {
+            return;
+        }
+        removeCallbacks(mBlink);
+        mFieldVisible = isFieldVisible();
+        //wake up exactly on the next phase change
+        final long delay = mCursorBlink.getWakeupDelay(AnimationUtils.currentAnimationTimeMillis(),
+                mFieldVisible, mAnimator.isRunning());
+        if (delay == CursorBlink.NO_WAKEUP) {
+            return;
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            postOnAnimationDelayed(mBlink, delay);
+        } else {
+            postDelayed(mBlink, delay);
+        }
+    }
 
-        final int paddingLeft = getPaddingLeft();
-        final int imageEndPosition = paddingLeft + mBitmap.getWidth() + (2 * IMAGE_BUFFER_PADDING);
-        final int twelveNumberTextWidth = formattedNumberWidth - fourNumberTextWidth;
-        final int wholeWidth = (getMeasuredWidth() + twelveNumberTextWidth) - (paddingLeft + getPaddingRight());
-        mCVCOffset = wholeWidth - cvcTextWidth;
+    /**
+     * Called whenever the field may have been shown or hidden.
+     */
+    private void onShownChanged() {
+        if (!mInitialized) {
+            return;
+        }
+        if ((mAnimator.isRunning()) && (!isFieldVisible())) {
+            mAnimator.end();
+        }
+        updateBlinking();
+        publishRenderSnapshot();
+    }
 
-        final int leftPosition = (imageEndPosition + formattedNumberWidth);
-        mExpiryOffset = (((mCVCOffset - leftPosition) - expiryTextWidth) / 2) + leftPosition;
+    private int getTextStart() {
+        return getPaddingLeft() + mImage.getWidth() + (2 * IMAGE_BUFFER_PADDING);
+    }
 
-        mAnimator.setFloatValues(0.0f, 0 - twelveNumberTextWidth);
+    private int getTextBaseline() {
+        return getPaddingTop() + mTextOffsetY - (int) mTextPaint.ascent();
+    }
 
-        return twelveNumberTextWidth;
+    private int getCursorPosition(CardState state, float offsetX) {
+        return getCursorPosition(state, mTextPaint, getTextStart() + offsetX,
+                mSlideLayout.mExpiryOffset + offsetX, mSlideLayout.mCVCOffset + offsetX);
     }
 
-    private void validateNumber() {
-        if (mCardType.validateNumber(mNumber)) {
-            mMode = Mode.EXPIRY_MONTH;
-            setupSlideValues();
-            mAnimator.start();
-        } else {
-            mError = true;
+    /**
+     * @return the x position of the cursor for the current mode, snapped to a whole pixel so it
+     * only ever covers a single pixel column.
+     */
+    private static int getCursorPosition(CardState state, TextPaint textPaint, float numberX,
+            float expiryX, float cvcX) {
+        float cursorPosition;
+        switch (state.mMode) {
+            case NUMBER:
+                cursorPosition = textPaint.measureText(state.mNumberFormatted) + numberX;
+                break;
+            case EXPIRY_MONTH:
+            case EXPIRY_YEAR:
+                cursorPosition = textPaint.measureText(state.mExpiryFormatted) + expiryX;
+                break;
+            default: //CVC
+                cursorPosition = textPaint.measureText(state.mCVC) + cvcX;
         }
+        return Math.round(cursorPosition);
     }
 
-    private void checkIsCompleted() {
-        boolean completed = (mMode == Mode.CVC) && (mCVC.length() == mCardType.mCVCLength);
-        if (completed != mCompleted) {
-            mCompleted = completed;
-            if (mListener != null) {
-                mListener.onCardEntryCompleted(mCompleted);
+    /**
+     * Draws the number, expiry & CVC text (or their hints) for the given state at the given
+     * positions. Shared with the render thread backend, which passes in its own paints.
+     */
+    private static void drawFields(Canvas canvas, CardState state, float numberX, float expiryX,
+            float cvcX, int baseline, float slideFraction, boolean sliding, TextPaint textPaint,
+            TextPaint hintPaint, TextPaint errorPaint) {
+        int length = state.mNumberFormatted.length();
+        if (length == 0) {
+            hintPaint.setAlpha(0xFF);
+            canvas.drawText(NUMBER_HINT, numberX, baseline, hintPaint);
+        } else {
+            if ((state.mError) && (state.mMode == Mode.NUMBER)) {
+                canvas.drawText(state.mNumberFormatted, numberX, baseline, errorPaint);
+            } else {
+                canvas.drawText(state.mNumberFormatted, numberX, baseline, textPaint);
+            }
+        }
+
+        if ((sliding) || (state.mMode != Mode.NUMBER)) {
+            hintPaint.setAlpha((int) (slideFraction * 0xFF));
+
+            if (state.mExpiryFormatted.length() == 0) {
+                canvas.drawText(EXPIRY_HINT, expiryX, baseline, hintPaint);
+                canvas.drawText(state.mCardType.getCVCHint(), cvcX, baseline, hintPaint);
+            } else {
+                if ((state.mError) && ((state.mMode == Mode.EXPIRY_YEAR)
+                        || (state.mMode == Mode.EXPIRY_MONTH))) {
+                    canvas.drawText(state.mExpiryFormatted, expiryX, baseline, errorPaint);
+                } else {
+                    canvas.drawText(state.mExpiryFormatted, expiryX, baseline, textPaint);
+                }
+
+                if (state.mCVC.length() == 0) {
+                    canvas.drawText(state.mCardType.getCVCHint(), cvcX, baseline, hintPaint);
+                } else {
+                    canvas.drawText(state.mCVC, cvcX, baseline, textPaint);
+                }
             }
         }
     }
 
+    /**
+     * Draws a whole frame for the render thread backend, from the published snapshot and the
+     * render thread's own state, with the render thread's own paints.
+     */
+    static void drawFrame(Canvas canvas, RenderSnapshot snapshot, RenderState renderState,
+            long now, TextPaint textPaint, TextPaint hintPaint, TextPaint errorPaint,
+            Paint bitmapPaint) {
+        final CardState state = renderState.mState;
+        final SlideLayout slideLayout = renderState.mSlideLayout;
+        final int ordinal = state.mCardType.ordinal();
+        final int textStart = snapshot.mPaddingLeft + snapshot.mImages[ordinal].getWidth()
+                + (2 * IMAGE_BUFFER_PADDING);
+        final float slideFraction = renderState.getSlideFraction(now);
+        final float offsetX = slideFraction * slideLayout.mSlideDistance;
+        final float numberX = textStart + offsetX;
+        final float expiryX = slideLayout.mExpiryOffset + offsetX;
+        final float cvcX = slideLayout.mCVCOffset + offsetX;
+
+        canvas.save();
+        canvas.clipRect(textStart, 0, snapshot.mClipRight, snapshot.mHeight);
+        drawFields(canvas, state, numberX, expiryX, cvcX, snapshot.mBaseline, slideFraction,
+                renderState.isSliding(now), textPaint, hintPaint, errorPaint);
+        canvas.restore();
+
+        BrandAtlas.Sprite image = (state.mMode == Mode.CVC) ? snapshot.mCVCImages[ordinal]
+                : snapshot.mImages[ordinal];
+        image.draw(canvas, IMAGE_BUFFER_PADDING + snapshot.mPaddingLeft,
+                (snapshot.mHeight - image.getHeight()) / 2, bitmapPaint);
+
+        if (renderState.isCursorOn(now)) {
+            int cursorPosition = getCursorPosition(state, textPaint, numberX, expiryX, cvcX);
+            canvas.drawRect(cursorPosition, snapshot.mCursorTop, cursorPosition + 1,
+                    snapshot.mCursorBottom, textPaint);
+        }
+    }
+
+    /**
+     * Measures the widest text each field can hold, including the cursor at its end.
+     */
+    private void updateFieldWidths() {
+        //the number can be longer than its hint, up to the most digits setNumber takes with breaks,
+        //and is monospaced, so as wide as that many of any digit
+        final char[] longestNumber = new char[CardInput.getMaxNumberFormattedLength()];
+        Arrays.fill(longestNumber, '0');
+        mNumberWidth = (int) Math.ceil(Math.max(mTextPaint.measureText(NUMBER_HINT),
+                mTextPaint.measureText(longestNumber, 0, longestNumber.length))) + 1;
+        mExpiryWidth = (int) Math.ceil(mTextPaint.measureText(EXPIRY_HINT)) + 1;
+        mCVCWidth = (int) Math.ceil(Math.max(mTextPaint.measureText(CardInput.CVC_HINT),
+                mTextPaint.measureText(CardInput.AMEX_CVC_HINT))) + 1;
+    }
+
+    private static int getFieldRegion(Mode mode) {
+        switch (mode) {
+            case NUMBER:
+                return DIRTY_NUMBER;
+            case EXPIRY_MONTH:
+            case EXPIRY_YEAR:
+                return DIRTY_EXPIRY;
+            default: //CVC
+                return DIRTY_CVC;
+        }
+    }
+
+    /**
+     * Gets the bounds of a field's text, for the accessibility virtual fields.
+     *
+     * @param field one of the CardAccessibilityProvider VIRTUAL_* fields.
+     * @param out   set to the bounds, or empty if the field isn't showing.
+     */
+    void getFieldBounds(int field, Rect out) {
+        out.setEmpty();
+        final CardState state = mState.get();
+        if ((field != CardAccessibilityProvider.VIRTUAL_NUMBER) && (state.mMode == Mode.NUMBER)) {
+            return;
+        }
+
+        final float offsetX = getSlideOffset();
+        final int baseline = getTextBaseline();
+        final int textStart = getTextStart();
+        final int left;
+        final int width;
+        switch (field) {
+            case CardAccessibilityProvider.VIRTUAL_NUMBER:
+                left = (int) Math.floor(textStart + offsetX);
+                width = mNumberWidth;
+                break;
+            case CardAccessibilityProvider.VIRTUAL_EXPIRY:
+                left = (int) Math.floor(mSlideLayout.mExpiryOffset + offsetX);
+                width = mExpiryWidth;
+                break;
+            default:
+                left = (int) Math.floor(mSlideLayout.mCVCOffset + offsetX);
+                width = mCVCWidth;
+                break;
+        }
+        unionClipped(out, left, baseline + (int) Math.floor(mFontMetrics.top), left + width,
+                baseline + (int) Math.ceil(mFontMetrics.bottom), textStart, getWidth() - 10);
+    }
+
+    /**
+     * Invalidates only the bounding rects of the given regions (DIRTY_* flags), or the whole view
+     * while the slide animation is moving everything anyway.
+     *
+     * @param regions the regions that changed.
+     */
+    private void invalidateRegions(int regions) {
+        if (mAnimator.isRunning()) {
+            postInvalidate();
+            return;
+        }
+
+        final CardState state = mState.get();
+        final float offsetX = getSlideOffset();
+        final int baseline = getTextBaseline();
+        final int textTop = baseline + (int) Math.floor(mFontMetrics.top);
+        final int textBottom = baseline + (int) Math.ceil(mFontMetrics.bottom);
+        final int textStart = getTextStart();
+        final int textEnd = getWidth() - 10;
+        final Rect dirty = mDirtyRect;
+        dirty.setEmpty();
+
+        if ((regions & DIRTY_NUMBER) != 0) {
+            int left = (int) Math.floor(textStart + offsetX);
+            unionClipped(dirty, left, textTop, left + mNumberWidth, textBottom, textStart, textEnd);
+        }
+        if ((state.mMode != Mode.NUMBER) && ((regions & DIRTY_EXPIRY) != 0)) {
+            int left = (int) Math.floor(mSlideLayout.mExpiryOffset + offsetX);
+            unionClipped(dirty, left, textTop, left + mExpiryWidth, textBottom, textStart, textEnd);
+        }
+        if ((state.mMode != Mode.NUMBER) && ((regions & DIRTY_CVC) != 0)) {
+            int left = (int) Math.floor(mSlideLayout.mCVCOffset + offsetX);
+            unionClipped(dirty, left, textTop, left + mCVCWidth, textBottom, textStart, textEnd);
+        }
+        if ((regions & DIRTY_IMAGE) != 0) {
+            int left = IMAGE_BUFFER_PADDING + getPaddingLeft();
+            int width = Math.max(mImage.getWidth(), mCVCImage.getWidth());
+            int height = Math.max(mImage.getHeight(), mCVCImage.getHeight());
+            int top = (getMeasuredHeight() - height) / 2;
+            dirty.union(left, top, left + width, top + height);
+        }
+        if ((regions & DIRTY_CURSOR) != 0) {
+            int cursorPosition = getCursorPosition(state, offsetX);
+            dirty.union(cursorPosition, baseline + (int) Math.floor(mFontMetrics.top),
+                    cursorPosition + 1, baseline + (int) Math.ceil(mFontMetrics.descent));
+        }
+
+        if (!dirty.isEmpty()) {
+            postInvalidate(dirty.left, dirty.top, dirty.right, dirty.bottom);
+        }
+    }
+
+    private static void unionClipped(Rect dirty, int left, int top, int right, int bottom,
+            int clipLeft, int clipRight) {
+        left = Math.max(left, clipLeft);
+        right = Math.min(right, clipRight);
+        if (left < right) {
+            dirty.union(left, top, right, bottom);
+        }
+    }
+
+    /**
+     * @return the current slide offset, worked out from the animated fraction so drawing each frame
+     * doesn't box the animated value.
+     */
+    private float getSlideOffset() {
+        return mAnimator.getAnimatedFraction() * mSlideLayout.mSlideDistance;
+    }
+
+    private void setupSlideValues() {
+        mSlideLayout.measure(mTextPaint, mInput.getNumber(), mInput.getNumberFormatted(),
+                mCardType, getMeasuredWidth(), getPaddingLeft(), getPaddingRight(),
+                mImage.getWidth());
+        mAnimator.setFloatValues(0.0f, mSlideLayout.mSlideDistance);
+    }
+
+    private void startSlide() {
+        setupSlideValues();
+        mAnimator.start();
+    }
+
     private static int convertSPToPixels(Context context, int sp) {
         float scaledDensity = context.getResources().getDisplayMetrics().scaledDensity;
         return Math.round(scaledDensity * sp);
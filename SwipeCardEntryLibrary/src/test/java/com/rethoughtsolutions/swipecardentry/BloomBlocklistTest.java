@@ -0,0 +1,175 @@
+package com.rethoughtsolutions.swipecardentry;
+
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BloomBlocklistTest {
+
+    //6, 8 & 9 digit BINs, and a full number
+    private static final String[] ENTRIES = {"411111", "52000012", "378282246",
+            "5555555555554444"};
+
+    @Rule
+    public final TemporaryFolder mFolder = new TemporaryFolder();
+
+    private static byte[] write(double falsePositiveRate, String... entries) throws IOException {
+        List<CardNumber> numbers = new ArrayList<CardNumber>();
+        for (String entry : entries) {
+            numbers.add(CardNumber.parse(entry));
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BloomBlocklist.write(numbers, falsePositiveRate, out);
+        return out.toByteArray();
+    }
+
+    private BloomBlocklist open(byte[] bytes) throws IOException {
+        File file = mFolder.newFile();
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(bytes);
+        } finally {
+            out.close();
+        }
+        return BloomBlocklist.open(file);
+    }
+
+    private BloomBlocklist openEntries() throws IOException {
+        return open(write(0.01, ENTRIES));
+    }
+
+    private static boolean isBlocked(BloomBlocklist blocklist, String number, boolean complete) {
+        return blocklist.isBlocked(CardNumber.parse(number), complete);
+    }
+
+    @Test
+    public void roundTrips() throws IOException {
+        BloomBlocklist blocklist = openEntries();
+        assertEquals(ENTRIES.length, blocklist.size());
+        for (String entry : ENTRIES) {
+            assertTrue(entry, isBlocked(blocklist, entry, true));
+        }
+    }
+
+    @Test
+    public void blocksEveryNumberStartingWithABlockedBin() throws IOException {
+        BloomBlocklist blocklist = openEntries();
+        assertTrue(isBlocked(blocklist, "411111", false));
+        assertTrue(isBlocked(blocklist, "4111111", false));
+        assertTrue(isBlocked(blocklist, "4111111111111111", false));
+        assertTrue(isBlocked(blocklist, "4111111111111111", true));
+        assertTrue(isBlocked(blocklist, "52000012", false));
+        assertTrue(isBlocked(blocklist, "5200001234567890", true));
+        assertTrue(isBlocked(blocklist, "378282246310005", true));
+    }
+
+    @Test
+    public void allowsUnblockedBins() throws IOException {
+        BloomBlocklist blocklist = openEntries();
+        assertFalse(isBlocked(blocklist, "411112", false));
+        assertFalse(isBlocked(blocklist, "4111121111111111", true));
+        //shorter than the BINs that block them
+        assertFalse(isBlocked(blocklist, "41111", false));
+        assertFalse(isBlocked(blocklist, "5200001", false));
+        assertFalse(isBlocked(blocklist, "37828224", false));
+        assertFalse(isBlocked(blocklist, "5200002234567890", true));
+    }
+
+    @Test
+    public void matchesFullNumbersOnlyWhenComplete() throws IOException {
+        BloomBlocklist blocklist = openEntries();
+        assertFalse(isBlocked(blocklist, "5555555555554444", false));
+        assertTrue(isBlocked(blocklist, "5555555555554444", true));
+        assertFalse(isBlocked(blocklist, "555555555555", false));
+        assertFalse(isBlocked(blocklist, "5555555555554443", true));
+    }
+
+    @Test
+    public void confirmsFilterHitsAgainstTheEntries() throws IOException {
+        //a 50% false positive rate, so most of these pass the filter & need the table to reject
+        BloomBlocklist blocklist = open(write(0.5, ENTRIES));
+        Random random = new Random(1);
+        char[] digits = new char[16];
+        for (int count = 0; count < 10000; count++) {
+            for (int index = 0; index < digits.length; index++) {
+                digits[index] = (char) ('0' + random.nextInt(10));
+            }
+            String number = new String(digits);
+            boolean blocked = (number.startsWith("411111")) || (number.startsWith("52000012"))
+                    || (number.startsWith("378282246")) || (number.equals("5555555555554444"));
+            assertEquals(number, blocked, isBlocked(blocklist, number, true));
+        }
+    }
+
+    @Test
+    public void emptyBlocklistBlocksNothing() throws IOException {
+        BloomBlocklist blocklist = open(write(0.01));
+        assertEquals(0, blocklist.size());
+        assertFalse(isBlocked(blocklist, "4111111111111111", true));
+    }
+
+    @Test
+    public void rejectsTruncatedFiles() throws IOException {
+        byte[] bytes = write(0.01, ENTRIES);
+        //within the entry table, within the filter bits, and within the header
+        for (int length : new int[]{bytes.length - 1, 28, 10}) {
+            try {
+                open(Arrays.copyOf(bytes, length));
+                fail("Opened a blocklist truncated to " + length + " bytes");
+            } catch (IOException e) {
+                //expected
+            }
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsBadMagic() throws IOException {
+        byte[] bytes = write(0.01, ENTRIES);
+        bytes[0] ^= 0xFF;
+        open(bytes);
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsUnknownVersion() throws IOException {
+        byte[] bytes = write(0.01, ENTRIES);
+        bytes[7]++;
+        open(bytes);
+    }
+
+    @Test
+    public void blockedBinStaysAnErrorUntilDeleted() throws IOException {
+        CardInput input = new CardInput();
+        input.setNumberCheck(openEntries());
+        input.setNumber("41111122");
+        assertTrue(input.isError());
+
+        //the blocked BIN is still there
+        input.applyDelete();
+        assertEquals("4111112", input.getNumber().toString());
+        assertTrue(input.isError());
+        input.applyDelete();
+        assertTrue(input.isError());
+
+        input.applyDelete();
+        assertEquals("41111", input.getNumber().toString());
+        assertFalse(input.isError());
+        input.applyDigit(2);
+        assertEquals("411112", input.getNumber().toString());
+        assertFalse(input.isError());
+    }
+}
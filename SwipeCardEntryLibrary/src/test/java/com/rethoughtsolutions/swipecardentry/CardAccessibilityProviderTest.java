@@ -0,0 +1,38 @@
+package com.rethoughtsolutions.swipecardentry;
+
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class CardAccessibilityProviderTest {
+
+    @Test
+    public void parsesExpiryWithASeparator() {
+        assertEquals(10025, CardAccessibilityProvider.parseExpiry("1/25"));
+        assertEquals(10025, CardAccessibilityProvider.parseExpiry("01/25"));
+        assertEquals(122025, CardAccessibilityProvider.parseExpiry("12/2025"));
+        assertEquals(92030, CardAccessibilityProvider.parseExpiry("9-2030"));
+        assertEquals(120025, CardAccessibilityProvider.parseExpiry(" 12 / 25 "));
+    }
+
+    @Test
+    public void parsesExpiryDigitsOnly() {
+        assertEquals(10025, CardAccessibilityProvider.parseExpiry("125"));
+        assertEquals(120025, CardAccessibilityProvider.parseExpiry("1225"));
+        assertEquals(12025, CardAccessibilityProvider.parseExpiry("12025"));
+        assertEquals(122025, CardAccessibilityProvider.parseExpiry("122025"));
+    }
+
+    @Test
+    public void rejectsInvalidExpiry() {
+        assertEquals(-1, CardAccessibilityProvider.parseExpiry(""));
+        assertEquals(-1, CardAccessibilityProvider.parseExpiry("12"));
+        assertEquals(-1, CardAccessibilityProvider.parseExpiry("13/25"));
+        assertEquals(-1, CardAccessibilityProvider.parseExpiry("0/25"));
+        assertEquals(-1, CardAccessibilityProvider.parseExpiry("/25"));
+        assertEquals(-1, CardAccessibilityProvider.parseExpiry("1/2/25"));
+        assertEquals(-1, CardAccessibilityProvider.parseExpiry("12/253"));
+        assertEquals(-1, CardAccessibilityProvider.parseExpiry("1234567"));
+    }
+}
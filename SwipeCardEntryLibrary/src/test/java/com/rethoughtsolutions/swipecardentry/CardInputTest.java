@@ -0,0 +1,182 @@
+package com.rethoughtsolutions.swipecardentry;
+
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks the {@link CardInput} transition table against the nested switch logic it replaced
+ * ({@link LegacyCardInput}), comparing the whole state after every key.
+ */
+public class CardInputTest {
+
+    private static final int DELETE = 10;
+
+    private static final int KEYS = 11;
+
+    //valid VISA, MASTERCARD & AMEX, a bad check digit, an unknown type, too long and partial
+    private static final String[] NUMBERS = {"4111111111111111", "5555555555554444",
+            "378282246310005", "4111111111111112", "1234", "41111111111111111", "4", "",
+            "3400000000000009", "4111111111111111111", "4111 1111 1111 1111"};
+
+    private static final int DEPTH = 5;
+
+    @Test
+    public void everyShortSequenceFromEmpty() {
+        checkEverySequence(null, "", new int[DEPTH], 0);
+    }
+
+    @Test
+    public void everyShortSequenceAfterEachNumber() {
+        for (String number : NUMBERS) {
+            checkEverySequence(number, "", new int[DEPTH], 0);
+        }
+    }
+
+    @Test
+    public void everyShortSequenceFromTheExpiryAndCVC() {
+        //a month, a year that hasn't passed, and part of the CVC
+        final String[] typed = {"1", "12", "123", "1230", "12301", "123012"};
+        for (String keys : typed) {
+            checkEverySequence("4111111111111111", keys, new int[DEPTH], 0);
+            checkEverySequence("378282246310005", keys, new int[DEPTH], 0);
+        }
+    }
+
+    @Test
+    public void setNumberIgnoresFormatting() {
+        CardInput input = new CardInput();
+        input.setNumber("4111 1111-1111 1111");
+        assertEquals("4111111111111111", input.getNumber().toString());
+        assertEquals("4111 1111 1111 1111", input.getNumberFormatted().toString());
+        assertEquals(CardInput.Mode.EXPIRY_MONTH, input.getMode());
+    }
+
+    @Test
+    public void fillMatchesTyping() {
+        for (String number : NUMBERS) {
+            CardInput filled = new CardInput();
+            filled.fill(number, 12, 2099, "1234");
+
+            LegacyCardInput typed = new LegacyCardInput();
+            typed.setNumber(number);
+            if (typed.getMode() != CardInput.Mode.NUMBER) {
+                for (int digit : new int[]{1, 2, 9, 9, 1, 2, 3, 4}) {
+                    typed.applyDigit(digit);
+                }
+            }
+            assertState(number, typed, filled);
+        }
+    }
+
+    @Test
+    public void numberNeverExceedsMaxLength() {
+        CardInput input = new CardInput();
+        input.setNumber("41111111111111111111111111");
+        assertEquals(CardNumber.MAX_LENGTH, input.getNumber().length());
+        input.applyDigit(1);
+        assertEquals(CardNumber.MAX_LENGTH, input.getNumber().length());
+        CardNumber.parse(input.getNumber());
+
+        input.applyDelete();
+        assertEquals(CardNumber.MAX_LENGTH - 1, input.getNumber().length());
+        input.applyDigit(1);
+        input.applyDigit(1);
+        assertEquals(CardNumber.MAX_LENGTH, input.getNumber().length());
+    }
+
+    @Test
+    public void randomSessions() {
+        final Random random = new Random(1234);
+        for (int session = 0; session < 20000; session++) {
+            CardInput input = new CardInput();
+            LegacyCardInput legacy = new LegacyCardInput();
+            StringBuilder history = new StringBuilder();
+            if (random.nextBoolean()) {
+                //type a whole number first, so the later keys reach the expiry & CVC
+                String number = NUMBERS[random.nextInt(NUMBERS.length)];
+                for (int index = 0; index < number.length(); index++) {
+                    int digit = number.charAt(index) - '0';
+                    if ((digit >= 0) && (digit <= 9)) {
+                        apply(input, legacy, digit, history);
+                    }
+                }
+            }
+            for (int key = 0; key < 40; key++) {
+                int roll = random.nextInt(100);
+                if (roll < 3) {
+                    String number = NUMBERS[random.nextInt(NUMBERS.length)];
+                    input.setNumber(number);
+                    legacy.setNumber(number);
+                    history.append(" set:").append(number);
+                    assertState(history.toString(), legacy, input);
+                } else if (roll < 30) {
+                    apply(input, legacy, DELETE, history);
+                } else {
+                    apply(input, legacy, random.nextInt(10), history);
+                }
+            }
+        }
+    }
+
+    /**
+     * Applies every sequence of keys of the remaining depth after the given start, checking the
+     * state after each key.
+     */
+    private static void checkEverySequence(String number, String typed, int[] keys, int depth) {
+        if (depth == keys.length) {
+            CardInput input = new CardInput();
+            LegacyCardInput legacy = new LegacyCardInput();
+            StringBuilder history = new StringBuilder();
+            if (number != null) {
+                input.setNumber(number);
+                legacy.setNumber(number);
+                history.append("set:").append(number);
+                assertState(history.toString(), legacy, input);
+            }
+            for (int index = 0; index < typed.length(); index++) {
+                apply(input, legacy, typed.charAt(index) - '0', history);
+            }
+            for (int key : keys) {
+                apply(input, legacy, key, history);
+            }
+            return;
+        }
+        for (int key = 0; key < KEYS; key++) {
+            keys[depth] = key;
+            checkEverySequence(number, typed, keys, depth + 1);
+        }
+    }
+
+    private static void apply(CardInput input, LegacyCardInput legacy, int key,
+            StringBuilder history) {
+        if (key == DELETE) {
+            input.applyDelete();
+            legacy.applyDelete();
+            history.append(" del");
+        } else {
+            input.applyDigit(key);
+            legacy.applyDigit(key);
+            history.append(' ').append(key);
+        }
+        assertState(history.toString(), legacy, input);
+    }
+
+    private static void assertState(String history, LegacyCardInput expected, CardInput actual) {
+        assertEquals(history, expected.getMode(), actual.getMode());
+        assertEquals(history, expected.getCardType(), actual.getCardType());
+        assertEquals(history, expected.isError(), actual.isError());
+        assertEquals(history, expected.isCompleted(), actual.isCompleted());
+        assertEquals(history, expected.getNumber().toString(), actual.getNumber().toString());
+        assertEquals(history, expected.getNumberFormatted().toString(),
+                actual.getNumberFormatted().toString());
+        assertEquals(history, expected.getMonth().toString(), actual.getMonth().toString());
+        assertEquals(history, expected.getYear().toString(), actual.getYear().toString());
+        assertEquals(history, expected.getExpiryFormatted().toString(),
+                actual.getExpiryFormatted().toString());
+        assertEquals(history, expected.getCVC().toString(), actual.getCVC().toString());
+    }
+}
@@ -0,0 +1,124 @@
+package com.rethoughtsolutions.swipecardentry;
+
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class CardNumberTest {
+
+    @Test
+    public void packsEveryDigit() {
+        final Random random = new Random(42);
+        for (int length = 0; length <= CardNumber.MAX_LENGTH; length++) {
+            StringBuilder digits = new StringBuilder();
+            for (int index = 0; index < length; index++) {
+                digits.append((char) ('0' + random.nextInt(10)));
+            }
+            CardNumber number = CardNumber.parse(digits);
+            assertEquals(length, number.length());
+            assertEquals(digits.toString(), number.getDigits());
+            for (int index = 0; index < length; index++) {
+                assertEquals(digits.charAt(index) - '0', number.digitAt(index));
+            }
+            assertEquals(number, CardNumber.fromPacked(number.getPackedHigh(),
+                    number.getPackedLow()));
+            assertEquals(number.getPackedHigh(), CardNumber.packHigh(digits));
+            assertEquals(number.getPackedLow(), CardNumber.packLow(digits));
+            assertEquals(length, CardNumber.getLength(CardNumber.packLow(digits)));
+        }
+    }
+
+    @Test
+    public void emptyIsShared() {
+        assertSame(CardNumber.EMPTY, CardNumber.parse(""));
+        assertEquals(0, CardNumber.EMPTY.length());
+        assertFalse(CardNumber.EMPTY.isLuhnValid());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsTooManyDigits() {
+        CardNumber.parse("41111111111111111111");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsFormatting() {
+        CardNumber.parse("4111 1111 1111 1111");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsBadPackedLength() {
+        CardNumber.fromPacked(0L, 20L);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void rejectsDigitPastEnd() {
+        CardNumber.parse("4111").digitAt(4);
+    }
+
+    @Test
+    public void luhnMatchesCardType() {
+        final Random random = new Random(7);
+        for (int count = 0; count < 10000; count++) {
+            int length = 12 + random.nextInt(CardNumber.MAX_LENGTH - 11);
+            StringBuilder digits = new StringBuilder();
+            for (int index = 0; index < length; index++) {
+                digits.append((char) ('0' + random.nextInt(10)));
+            }
+            assertEquals(digits.toString(), CardInput.CardType.VISA.validateNumber(digits),
+                    CardNumber.parse(digits).isLuhnValid());
+        }
+        assertTrue(CardNumber.parse("4111111111111111").isLuhnValid());
+        assertTrue(CardNumber.parse("378282246310005").isLuhnValid());
+        assertTrue(CardNumber.parse("6011000990139424").isLuhnValid());
+        assertFalse(CardNumber.parse("4111111111111112").isLuhnValid());
+    }
+
+    @Test
+    public void prefixAndLastFour() {
+        CardNumber number = CardNumber.parse("5555555555554444");
+        assertEquals(555555, number.getPrefix(6));
+        assertEquals(555555555, number.getPrefix(9));
+        assertEquals(4444, number.getLastFour());
+        assertEquals(-1, CardNumber.parse("55555").getPrefix(6));
+        assertEquals(-1, CardNumber.parse("555").getLastFour());
+        assertEquals(1, CardNumber.parse("4000000000000000001").getLastFour());
+    }
+
+    @Test
+    public void schemes() {
+        assertEquals(CardNumber.Scheme.VISA, CardNumber.parse("4111111111111111").getScheme());
+        assertEquals(CardNumber.Scheme.MASTERCARD,
+                CardNumber.parse("5555555555554444").getScheme());
+        assertEquals(CardNumber.Scheme.AMEX, CardNumber.parse("378282246310005").getScheme());
+        assertEquals(CardNumber.Scheme.AMEX, CardNumber.parse("34").getScheme());
+        assertEquals(CardNumber.Scheme.UNKNOWN, CardNumber.parse("6011000990139424").getScheme());
+        assertEquals(CardNumber.Scheme.UNKNOWN, CardNumber.parse("5").getScheme());
+    }
+
+    @Test
+    public void masksAllButTheEnds() {
+        assertEquals("411111******1111", CardNumber.parse("4111111111111111").getMasked());
+        assertEquals("378282*****0005", CardNumber.parse("378282246310005").getMasked());
+        assertEquals("**********", CardNumber.parse("4111111111").getMasked());
+        assertEquals("411111******1111", CardNumber.parse("4111111111111111").toString());
+    }
+
+    @Test
+    public void equalityAndHashing() {
+        CardNumber number = CardNumber.parse("4111111111111111");
+        assertEquals(number, CardNumber.parse("4111111111111111"));
+        assertEquals(number.hashCode(), CardNumber.parse("4111111111111111").hashCode());
+        //same digits, different lengths
+        assertNotEquals(CardNumber.parse("41110"), CardNumber.parse("4111"));
+        assertNotEquals(number, CardNumber.parse("4111111111111112"));
+        assertNotEquals(number, CardNumber.parse("41111111111111111"));
+        assertNotEquals(number, "4111111111111111");
+    }
+}
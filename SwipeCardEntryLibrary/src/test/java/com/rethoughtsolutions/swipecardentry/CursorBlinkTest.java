@@ -0,0 +1,102 @@
+package com.rethoughtsolutions.swipecardentry;
+
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Counts the main looper wakeups the cursor blink asks for, by following each scheduled delay
+ * the way SwipeCardEntry's blink runnable does.
+ */
+public class CursorBlinkTest {
+
+    private static final long TEN_SECONDS = 10000;
+
+    /**
+     * @return the number of wakeups between from and to.
+     */
+    private static int countWakeups(CursorBlink blink, long from, long to, boolean visible,
+            boolean sliding) {
+        int wakeups = 0;
+        long now = from;
+        while (true) {
+            long delay = blink.getWakeupDelay(now, visible, sliding);
+            if (delay == CursorBlink.NO_WAKEUP) {
+                return wakeups;
+            }
+            assertTrue(delay > 0);
+            now += delay;
+            if (now > to) {
+                return wakeups;
+            }
+            wakeups++;
+        }
+    }
+
+    @Test
+    public void wakesTwicePerSecondWhileVisible() {
+        CursorBlink blink = new CursorBlink();
+        blink.start(1234);
+        assertEquals(20, countWakeups(blink, 1234, 1234 + TEN_SECONDS, true, false));
+    }
+
+    @Test
+    public void neverWakesWhileHidden() {
+        CursorBlink blink = new CursorBlink();
+        blink.start(0);
+        assertEquals(0, countWakeups(blink, 0, TEN_SECONDS, false, false));
+    }
+
+    @Test
+    public void neverWakesWhileSliding() {
+        CursorBlink blink = new CursorBlink();
+        blink.start(0);
+        assertEquals(0, countWakeups(blink, 0, TEN_SECONDS, true, true));
+    }
+
+    @Test
+    public void neverWakesOnceStopped() {
+        CursorBlink blink = new CursorBlink();
+        blink.start(0);
+        assertEquals(2, countWakeups(blink, 0, 1000, true, false));
+        blink.stop();
+        assertEquals(0, countWakeups(blink, 1000, 1000 + TEN_SECONDS, true, false));
+        assertFalse(blink.isCursorOn(1000));
+    }
+
+    @Test
+    public void wakesOnEachPhaseChange() {
+        CursorBlink blink = new CursorBlink();
+        blink.start(100);
+        long now = 100;
+        boolean on = blink.isCursorOn(now);
+        assertTrue(on);
+        for (int wakeup = 0; wakeup < 10; wakeup++) {
+            now += blink.getWakeupDelay(now, true, false);
+            assertNotEquals(on, blink.isCursorOn(now));
+            assertEquals(on, blink.isCursorOn(now - 1));
+            on = blink.isCursorOn(now);
+        }
+    }
+
+    @Test
+    public void resumesOnPhaseAfterSliding() {
+        CursorBlink blink = new CursorBlink();
+        blink.start(0);
+        //the slide ends part way through a phase, the next wakeup is still on a phase change
+        assertEquals(CursorBlink.BLINK_DURATION - 200, blink.getWakeupDelay(700, true, false));
+    }
+
+    @Test
+    public void restartShowsCursor() {
+        CursorBlink blink = new CursorBlink();
+        blink.start(0);
+        assertFalse(blink.isCursorOn(CursorBlink.BLINK_DURATION));
+        blink.start(CursorBlink.BLINK_DURATION);
+        assertTrue(blink.isCursorOn(CursorBlink.BLINK_DURATION));
+    }
+}
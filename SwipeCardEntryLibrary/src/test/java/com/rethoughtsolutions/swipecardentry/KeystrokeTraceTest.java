@@ -0,0 +1,193 @@
+package com.rethoughtsolutions.swipecardentry;
+
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class KeystrokeTraceTest {
+
+    @Test
+    public void corpusReplaysWithoutMismatches() throws IOException {
+        for (String name : TraceCorpus.NAMES) {
+            KeystrokeTrace[] corpus = TraceCorpus.read(TraceCorpus.DIRECTORY, name);
+            KeystrokeTrace.ReplayResult result = KeystrokeTrace.replay(corpus);
+            assertEquals(name, corpus.length, result.getTraceCount());
+            assertEquals(name, 0, result.getMismatchCount());
+            assertTrue(name, result.getEventCount() > corpus.length);
+        }
+    }
+
+    @Test
+    public void generatedCorpusReplaysWithoutMismatches() {
+        for (String name : TraceCorpus.NAMES) {
+            assertEquals(name, 0, KeystrokeTrace.replay(TraceCorpus.generate(name))
+                    .getMismatchCount());
+        }
+    }
+
+    @Test
+    public void recordsWhatTheInputIsFed() throws IOException {
+        CardInput input = new CardInput();
+        KeystrokeTrace trace = new KeystrokeTrace();
+        assertEquals(null, input.setTrace(trace));
+        input.setNumber("4111 1111 1111 1112");
+        input.applyDelete();
+        input.applyDigit(1);
+        for (char digit : "1250123".toCharArray()) {
+            input.applyDigit(digit - '0');
+        }
+        assertTrue(input.isCompleted());
+        assertEquals(trace, input.setTrace(null));
+        trace.finish(input);
+        input.applyDelete();
+        assertEquals(12, input.getExpiryMonth());
+        assertEquals(50, input.getExpiryYear());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        trace.write(out);
+        KeystrokeTrace read = KeystrokeTrace.read(new ByteArrayInputStream(out.toByteArray()));
+        KeystrokeTrace.ReplayResult result = read.replay();
+        assertEquals(1, result.getTraceCount());
+        assertEquals(0, result.getMismatchCount());
+        assertEquals(10, result.getEventCount());
+    }
+
+    @Test
+    public void detectsADifferentEnding() {
+        KeystrokeTrace trace = new KeystrokeTrace();
+        trace.recordNumber("4111111111111111");
+        trace.finish("4111111111111111", 0, 0, "", true);
+        assertEquals(1, trace.replay().getMismatchCount());
+    }
+
+    @Test
+    public void corpusRoundTrips() throws IOException {
+        KeystrokeTrace[] corpus = TraceCorpus.generate("typing");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        KeystrokeTrace.writeCorpus(out, corpus);
+        KeystrokeTrace[] read = KeystrokeTrace.readCorpus(
+                new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(corpus.length, read.length);
+        assertEquals(KeystrokeTrace.replay(corpus).getEventCount(),
+                KeystrokeTrace.replay(read).getEventCount());
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsATraceAsACorpus() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new KeystrokeTrace().write(out);
+        KeystrokeTrace.readCorpus(new ByteArrayInputStream(out.toByteArray()));
+    }
+
+    @Test
+    public void replaysFromTheStateRecordingStartedIn() throws IOException {
+        CardInput input = new CardInput();
+        input.setNumber("4111111111111111");
+        input.applyDigit(1);
+        KeystrokeTrace trace = new KeystrokeTrace();
+        input.setTrace(trace);
+        for (char digit : "250".toCharArray()) {
+            input.applyDigit(digit - '0');
+        }
+        input.applyDelete();
+        input.applyDelete();
+        input.applyDelete();
+        input.applyDelete();
+        input.applyDigit(0);
+        input.setTrace(null);
+        trace.finish(input);
+        assertEquals("0", input.getMonth().toString());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        trace.write(out);
+        KeystrokeTrace.ReplayResult result = KeystrokeTrace.read(
+                new ByteArrayInputStream(out.toByteArray())).replay();
+        assertEquals(0, result.getMismatchCount());
+        assertEquals(8, result.getEventCount());
+    }
+
+    @Test
+    public void replaysWithTheNumberCheck() {
+        CardNumberCheck check = new CardNumberCheck() {
+            @Override
+            public boolean isBlocked(long packedHigh, long packedLow, boolean complete) {
+                return CardNumber.fromPacked(packedHigh, packedLow).getPrefix(6) == 411111;
+            }
+        };
+        CardInput input = new CardInput();
+        input.setNumberCheck(check);
+        KeystrokeTrace trace = new KeystrokeTrace();
+        input.setTrace(trace);
+        for (char digit : "41111122".toCharArray()) {
+            input.applyDigit(digit - '0');
+        }
+        assertTrue(input.isError());
+        input.setTrace(null);
+        trace.finish(input);
+
+        assertEquals(1, trace.replay().getMismatchCount());
+        assertEquals(0, trace.replay(check).getMismatchCount());
+    }
+
+    @Test
+    public void reportsAllocations() {
+        KeystrokeTrace.ReplayResult result = KeystrokeTrace.replay(TraceCorpus.generate("typing"));
+        //always known on the JVM the tests run on
+        assertTrue(result.toString(), result.getAllocatedBytes() >= 0);
+    }
+
+    @Test
+    public void rejectsTruncatedTraces() throws IOException {
+        CardInput input = new CardInput();
+        input.setNumber("4111");
+        KeystrokeTrace trace = new KeystrokeTrace();
+        input.setTrace(trace);
+        input.setNumber("4111111111111111");
+        input.applyDigit(1);
+        input.applyDelete();
+        input.setTrace(null);
+        trace.finish(input);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        trace.write(out);
+        byte[] bytes = out.toByteArray();
+
+        //cut part way through the end, where nothing is optional
+        try {
+            KeystrokeTrace.read(new ByteArrayInputStream(Arrays.copyOf(bytes, bytes.length - 1)));
+            fail("Read a truncated trace");
+        } catch (IOException e) {
+            //expected
+        }
+
+        //anywhere else is either rejected or, cut between events, replays
+        for (int length = 4; length < bytes.length; length++) {
+            KeystrokeTrace read;
+            try {
+                read = KeystrokeTrace.read(new ByteArrayInputStream(
+                        Arrays.copyOf(bytes, length)));
+            } catch (IOException e) {
+                continue;
+            }
+            assertEquals(1, read.replay().getTraceCount());
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsUnknownEvents() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        KeystrokeTrace trace = new KeystrokeTrace();
+        trace.recordDelete();
+        trace.write(out);
+        byte[] bytes = out.toByteArray();
+        bytes[4] = 0x7F;
+        KeystrokeTrace.read(new ByteArrayInputStream(bytes));
+    }
+}
@@ -0,0 +1,286 @@
+package com.rethoughtsolutions.swipecardentry;
+
+
+import com.rethoughtsolutions.swipecardentry.CardInput.CardType;
+import com.rethoughtsolutions.swipecardentry.CardInput.Mode;
+
+import java.util.Calendar;
+
+/**
+ * The entry logic as it was before the {@link CardInput} transition table, the nested switch
+ * fall-through from SwipeCardEntry.processKeyEvent & setNumber, with the drawing taken out. Used
+ * as the reference the table is checked and benchmarked against.
+ * <p/>
+ * It differs from the original only where CardInput deliberately does too. setNumber clears any
+ * previous error: the original kept it, so a valid number set after a mistyped one was drawn as
+ * an error and ignored typing. The number also only ever holds digits, at most
+ * {@link CardNumber#MAX_LENGTH} of them, so it can always be packed into a CardNumber.
+ */
+final class LegacyCardInput {
+
+    private CardType mCardType = CardType.UNKNOWN;
+
+    private Mode mMode = Mode.NUMBER;
+
+    private boolean mCompleted = false;
+
+    private boolean mError = false;
+
+    private final StringBuilder mNumber = new StringBuilder();
+
+    private final StringBuilder mNumberFormatted = new StringBuilder();
+
+    private final StringBuilder mMonth = new StringBuilder();
+
+    private final StringBuilder mYear = new StringBuilder();
+
+    private final StringBuilder mExpiryFormatted = new StringBuilder();
+
+    private final StringBuilder mCVC = new StringBuilder();
+
+    void setNumber(CharSequence number) {
+        mNumber.setLength(0);
+        mMonth.setLength(0);
+        mYear.setLength(0);
+        mCVC.setLength(0);
+        mNumberFormatted.setLength(0);
+        mExpiryFormatted.setLength(0);
+
+        mCardType = CardType.UNKNOWN;
+        mMode = Mode.NUMBER;
+        mError = false;
+        for (int index = 0; index < number.length(); index++) {
+            char digit = number.charAt(index);
+            if ((digit >= '0') && (digit <= '9') && (mNumber.length() < CardNumber.MAX_LENGTH)) {
+                mNumber.append(digit);
+            }
+        }
+
+        mNumberFormatted.append(mNumber);
+
+        if (mNumber.length() >= 2) {
+            CharSequence firstTwoDigits = mNumber.subSequence(0, 2);
+            mCardType = CardInput.guessCardType(firstTwoDigits);
+            if (mCardType == CardType.UNKNOWN) {
+                mNumber.setLength(0);
+                mNumberFormatted.setLength(0);
+                mNumber.append(firstTwoDigits);
+                mNumberFormatted.append(firstTwoDigits);
+                mError = true;
+            }
+        }
+
+        //the breaks from last to first, so inserting one doesn't move the others
+        for (int space = mNumberFormatted.length() - 1; space > 0; space--) {
+            if (mCardType.hasBreakAt(space)) {
+                mNumberFormatted.insert(space, " ");
+            }
+        }
+
+        if (mCardType.isCorrectLength(mNumber.length())) {
+            validateNumber();
+        }
+
+        checkIsCompleted();
+    }
+
+    void applyDelete() {
+        switch (mMode) {
+            case CVC:
+                if (mCVC.length() > 0) {
+                    removeLastChar(mCVC);
+                    break;
+                } else {
+                    //we are going back to number mode:
+                    mMode = Mode.EXPIRY_YEAR;
+                }
+            case EXPIRY_YEAR:
+                if (mYear.length() > 0) {
+                    removeLastChar(mYear);
+                    removeLastChar(mExpiryFormatted);
+                    break;
+                } else {
+                    //we are going back to number mode:
+                    removeLastChar(mExpiryFormatted);
+                    mMode = Mode.EXPIRY_MONTH;
+                }
+            case EXPIRY_MONTH:
+                if (mMonth.length() > 0) {
+                    removeLastChar(mMonth);
+                    removeLastChar(mExpiryFormatted);
+                    break;
+                } else {
+                    //we are going back to number mode:
+                    mMode = Mode.NUMBER;
+                }
+            case NUMBER:
+                if (mNumber.length() > 0) {
+                    removeLastChar(mNumber);
+                    removeLastChar(mNumberFormatted);
+                    if (mCardType.hasBreakAt(mNumber.length() + 1)) {
+                        removeLastChar(mNumberFormatted);
+                    }
+
+                    if (mNumber.length() < 2) {
+                        mCardType = CardType.UNKNOWN;
+                    }
+                }
+                break;
+        }
+        mError = false;
+        checkIsCompleted();
+    }
+
+    void applyDigit(int number) {
+        if (mError) {
+            return;
+        }
+        String numberAsString = Integer.toString(number);
+        switch (mMode) {
+            case NUMBER:
+                if (mNumber.length() == CardNumber.MAX_LENGTH) {
+                    break;
+                }
+                mNumber.append(numberAsString);
+                mNumberFormatted.append(numberAsString);
+                int length = mNumber.length();
+                if (mCardType.hasBreakAt(length)) {
+                    mNumberFormatted.append(' ');
+                }
+                if (length < 2) {
+                    //do nothing
+                } else if (length == 2) {
+                    mCardType = CardInput.guessCardType(mNumber);
+                    if (mCardType == CardType.UNKNOWN) {
+                        mError = true;
+                    }
+                } else if (mCardType.isCorrectLength(length)) {
+                    validateNumber();
+                }
+                break;
+            case EXPIRY_MONTH:
+                if (mMonth.length() == 0) {
+                    if ((number == 0) || (number == 1)) {
+                        mMonth.append(numberAsString);
+                        mExpiryFormatted.append(numberAsString);
+                    }
+                } else if (mMonth.length() == 1) {
+                    if (mMonth.charAt(0) == '1') {
+                        if ((number == 0) || (number == 1) || (number == 2)) {
+                            mMonth.append(numberAsString);
+                            mExpiryFormatted.append(numberAsString);
+                        }
+                    } else if (number != 0) {
+                        mMonth.append(numberAsString);
+                        mExpiryFormatted.append(numberAsString);
+                    }
+
+                    if (mMonth.length() == 2) {
+                        int month = Integer.parseInt(mMonth.toString());
+                        if ((month >= 1) && (month <= 12)) {
+                            mExpiryFormatted.append('/');
+                            mMode = Mode.EXPIRY_YEAR;
+                        }
+                    }
+
+                }
+                break;
+            case EXPIRY_YEAR:
+                final int yearLength = mYear.length();
+
+                if (yearLength == 0) {
+                    if (number >= 1) {
+                        mYear.append(numberAsString);
+                        mExpiryFormatted.append(numberAsString);
+                    }
+                } else if (yearLength == 1) {
+                    mYear.append(numberAsString);
+
+                    Calendar calendar = Calendar.getInstance();
+                    int actualYear = calendar.get(Calendar.YEAR);
+                    int enteredYear = 2000 + Integer.parseInt(mYear.toString());
+
+                    if (actualYear == enteredYear) {
+                        //validate the month
+                        int actualMonth = calendar.get(Calendar.MONTH) + 1;
+                        int enteredMonth = Integer.parseInt(mMonth.toString());
+                        if (actualMonth <= enteredMonth) {
+                            mExpiryFormatted.append(numberAsString);
+                            mMode = Mode.CVC;
+                        } else {
+                            removeLastChar(mYear);
+                        }
+                    } else if (actualYear < enteredYear) {
+                        mExpiryFormatted.append(numberAsString);
+                        mMode = Mode.CVC;
+                    } else {
+                        removeLastChar(mYear);
+                    }
+                }
+                break;
+            case CVC:
+                if (mCVC.length() < mCardType.getCVCLength()) {
+                    mCVC.append(numberAsString);
+                    checkIsCompleted();
+                }
+                break;
+        }
+    }
+
+    Mode getMode() {
+        return mMode;
+    }
+
+    CardType getCardType() {
+        return mCardType;
+    }
+
+    boolean isError() {
+        return mError;
+    }
+
+    boolean isCompleted() {
+        return mCompleted;
+    }
+
+    CharSequence getNumber() {
+        return mNumber;
+    }
+
+    CharSequence getNumberFormatted() {
+        return mNumberFormatted;
+    }
+
+    CharSequence getMonth() {
+        return mMonth;
+    }
+
+    CharSequence getYear() {
+        return mYear;
+    }
+
+    CharSequence getExpiryFormatted() {
+        return mExpiryFormatted;
+    }
+
+    CharSequence getCVC() {
+        return mCVC;
+    }
+
+    private void validateNumber() {
+        if (mCardType.validateNumber(mNumber)) {
+            mMode = Mode.EXPIRY_MONTH;
+        } else {
+            mError = true;
+        }
+    }
+
+    private void checkIsCompleted() {
+        mCompleted = (mMode == Mode.CVC) && (mCVC.length() == mCardType.getCVCLength());
+    }
+
+    private static void removeLastChar(StringBuilder text) {
+        int length = text.length() - 1;
+        text.delete(length, length + 1);
+    }
+}
@@ -0,0 +1,280 @@
+package com.rethoughtsolutions.swipecardentry;
+
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RecentCardsTest {
+
+    private static final long MAX_AGE = TimeUnit.DAYS.toMillis(90);
+
+    private static final CardNumber VISA = CardNumber.parse("4111111111111111");
+
+    private static final CardNumber VISA_OTHER = CardNumber.parse("4111111111114444");
+
+    private static final CardNumber MASTERCARD = CardNumber.parse("5500000000000004");
+
+    private static final CardNumber AMEX = CardNumber.parse("378282246310005");
+
+    @Rule
+    public final TemporaryFolder mFolder = new TemporaryFolder();
+
+    private File mFile;
+
+    private final FakeClock mClock = new FakeClock();
+
+    @Before
+    public void setUp() {
+        mFile = new File(mFolder.getRoot(), "recent");
+    }
+
+    @Test
+    public void replaysAfterReload() throws IOException {
+        RecentCards cards = load(10);
+        cards.add(VISA, 12, 30);
+        mClock.advance(1);
+        cards.add(MASTERCARD, 1, 31);
+        mClock.advance(1);
+        cards.add(VISA, 12, 30);
+
+        RecentCards loaded = load(10);
+        assertEquals(2, loaded.size());
+        int visa = findOnly(loaded, VISA);
+        assertEquals("411111******1111", loaded.getMasked(visa));
+        assertEquals(12, loaded.getExpiryMonth(visa));
+        assertEquals(30, loaded.getExpiryYear(visa));
+        assertEquals(CardNumber.Scheme.VISA, loaded.getScheme(visa));
+        assertEquals(mClock.mNow, loaded.getLastUsed(visa));
+        int mastercard = findOnly(loaded, MASTERCARD);
+        assertEquals(mClock.mNow - 60000L, loaded.getLastUsed(mastercard));
+    }
+
+    @Test
+    public void removalSurvivesReload() throws IOException {
+        RecentCards cards = load(10);
+        cards.add(VISA, 12, 30);
+        cards.add(AMEX, 6, 29);
+        cards.remove(findOnly(cards, VISA));
+
+        RecentCards loaded = load(10);
+        assertEquals(1, loaded.size());
+        assertEquals(0, loaded.findMatches(VISA, true, new int[4]));
+        findOnly(loaded, AMEX);
+    }
+
+    @Test
+    public void dropsLeastRecentlyUsedBeyondCapacity() throws IOException {
+        RecentCards cards = load(2);
+        cards.add(VISA, 12, 30);
+        mClock.advance(1);
+        cards.add(MASTERCARD, 1, 31);
+        mClock.advance(1);
+        cards.add(VISA, 12, 30);
+        mClock.advance(1);
+        cards.add(AMEX, 6, 29);
+
+        assertEquals(2, cards.size());
+        assertEquals(0, cards.findMatches(MASTERCARD, true, new int[4]));
+        RecentCards loaded = load(2);
+        assertEquals(2, loaded.size());
+        assertEquals(0, loaded.findMatches(MASTERCARD, true, new int[4]));
+        findOnly(loaded, VISA);
+        findOnly(loaded, AMEX);
+    }
+
+    @Test
+    public void keepsMostRecentlyUsedWhenLoadedWithLessCapacity() throws IOException {
+        RecentCards cards = load(10);
+        cards.add(VISA, 12, 30);
+        mClock.advance(1);
+        cards.add(AMEX, 6, 29);
+        mClock.advance(1);
+        cards.add(MASTERCARD, 1, 31);
+
+        RecentCards loaded = load(1);
+        assertEquals(1, loaded.size());
+        findOnly(loaded, MASTERCARD);
+    }
+
+    @Test
+    public void dropsCardsPastTheMaxAge() throws IOException {
+        RecentCards cards = load(10);
+        cards.add(VISA, 12, 30);
+        mClock.advance(TimeUnit.DAYS.toMinutes(60));
+        cards.add(AMEX, 6, 29);
+        mClock.advance(TimeUnit.DAYS.toMinutes(31));
+
+        //too old to match, but kept until the next add
+        assertEquals(0, cards.findMatches(VISA, false, new int[4]));
+        findOnly(cards, AMEX);
+        RecentCards loaded = load(10);
+        assertEquals(1, loaded.size());
+        cards.add(MASTERCARD, 1, 31);
+        assertEquals(2, cards.size());
+    }
+
+    @Test
+    public void keepsCardOrderAcrossCompactionAndReload() throws IOException {
+        RecentCards cards = load(3);
+        for (int use = 0; use < 8; use++) {
+            //compacted part way through, so the file is a sorted run then appended records
+            mClock.advance(1);
+            cards.add(((use % 3) == 0) ? MASTERCARD : ((use % 3) == 1) ? VISA_OTHER : VISA, 1, 31);
+        }
+        assertEquals(3, cards.size());
+        assertEquals(1111, cards.getLastFour(0));
+        assertEquals(4444, cards.getLastFour(1));
+        assertEquals(550000, cards.getBin(2));
+
+        RecentCards loaded = load(3);
+        for (int index = 0; index < 3; index++) {
+            assertEquals(cards.getBin(index), loaded.getBin(index));
+            assertEquals(cards.getLastFour(index), loaded.getLastFour(index));
+            assertEquals(cards.getLastUsed(index), loaded.getLastUsed(index));
+        }
+    }
+
+    @Test
+    public void compactsStaleRecords() throws IOException {
+        RecentCards cards = load(2);
+        final long header = 8;
+        final long record = 16;
+        for (int use = 0; use < 20; use++) {
+            mClock.advance(1);
+            cards.add(((use % 2) == 0) ? VISA : AMEX, 6, 29);
+            assertTrue(mFile.length() <= header + (2 * 2 * record));
+        }
+        assertEquals(2, cards.size());
+
+        //loading rewrites a file with too many records
+        RecentCards wide = load(10);
+        for (int use = 0; use < 10; use++) {
+            mClock.advance(1);
+            wide.add(MASTERCARD, 1, 31);
+        }
+        assertTrue(mFile.length() > header + (2 * 2 * record));
+        RecentCards loaded = load(2);
+        assertEquals(header + (2 * record), mFile.length());
+        findOnly(loaded, MASTERCARD);
+        findOnly(loaded, AMEX);
+    }
+
+    @Test
+    public void ignoresAPartlyWrittenRecord() throws IOException {
+        load(10).add(VISA, 12, 30);
+        FileOutputStream out = new FileOutputStream(mFile, true);
+        try {
+            out.write(new byte[7]);
+        } finally {
+            out.close();
+        }
+
+        RecentCards loaded = load(10);
+        assertEquals(1, loaded.size());
+        loaded.add(AMEX, 6, 29);
+        assertEquals(2, load(10).size());
+    }
+
+    @Test
+    public void skipsCorruptRecords() throws IOException {
+        RecentCards cards = load(10);
+        cards.add(VISA, 12, 30);
+        cards.add(MASTERCARD, 1, 31);
+        cards.add(AMEX, 6, 29);
+        cards.add(VISA_OTHER, 3, 32);
+
+        //the 2nd record's scheme, the 3rd's length and the 4th's BIN
+        RandomAccessFile file = new RandomAccessFile(mFile, "rw");
+        try {
+            file.seek(8 + 16 + 12);
+            file.write(0x7F);
+            file.seek(8 + 32 + 14);
+            file.write(3);
+            file.seek(8 + 48);
+            file.write(0xFF);
+        } finally {
+            file.close();
+        }
+
+        RecentCards loaded = load(10);
+        assertEquals(1, loaded.size());
+        int visa = findOnly(loaded, VISA);
+        assertEquals("411111******1111", loaded.getMasked(visa));
+        assertEquals(CardNumber.Scheme.VISA, loaded.getScheme(visa));
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsAnotherFile() throws IOException {
+        FileOutputStream out = new FileOutputStream(mFile);
+        try {
+            out.write(new byte[16]);
+        } finally {
+            out.close();
+        }
+        load(10);
+    }
+
+    @Test
+    public void findsMostRecentlyUsedFirst() throws IOException {
+        RecentCards cards = load(10);
+        cards.add(VISA, 12, 30);
+        mClock.advance(1);
+        cards.add(MASTERCARD, 1, 31);
+        mClock.advance(1);
+        cards.add(VISA_OTHER, 3, 32);
+        mClock.advance(1);
+        cards.add(VISA, 12, 30);
+
+        int[] matches = new int[4];
+        assertEquals(2, cards.findMatches(CardNumber.parse("41"), false, matches));
+        assertEquals(1111, cards.getLastFour(matches[0]));
+        assertEquals(4444, cards.getLastFour(matches[1]));
+
+        //only as many as fit, the most recent kept
+        int[] one = new int[1];
+        assertEquals(1, cards.findMatches(CardNumber.parse("4"), false, one));
+        assertEquals(1111, cards.getLastFour(one[0]));
+
+        //a complete number must match the last 4 and length too
+        assertEquals(1, cards.findMatches(VISA_OTHER, true, matches));
+        assertEquals(4444, cards.getLastFour(matches[0]));
+        assertEquals(0, cards.findMatches(CardNumber.parse("411111111111111"), true, matches));
+        assertEquals(0, cards.findMatches(CardNumber.parse("3"), false, matches));
+        assertEquals(0, cards.findMatches(CardNumber.EMPTY, false, matches));
+    }
+
+    private RecentCards load(int capacity) throws IOException {
+        return RecentCards.load(mFile, capacity, MAX_AGE, mClock);
+    }
+
+    private static int findOnly(RecentCards cards, CardNumber number) {
+        int[] matches = new int[4];
+        assertEquals(number.getMasked(), 1, cards.findMatches(number, true, matches));
+        return matches[0];
+    }
+
+    private static final class FakeClock implements RecentCards.Clock {
+
+        long mNow = TimeUnit.DAYS.toMillis(20000);
+
+        void advance(long minutes) {
+            mNow += TimeUnit.MINUTES.toMillis(minutes);
+        }
+
+        @Override
+        public long currentTimeMillis() {
+            return mNow;
+        }
+    }
+}
@@ -0,0 +1,334 @@
+package com.rethoughtsolutions.swipecardentry;
+
+
+import com.rethoughtsolutions.swipecardentry.CardInput.Mode;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+
+/**
+ * Generates the checked in corpus of {@link KeystrokeTrace}s (src/test/traces), one file per kind
+ * of session, with the final state of each trace taken from {@link LegacyCardInput} rather than
+ * the logic being replayed. Expiry years are either long past (2010 - 2019) or far enough ahead
+ * (2040 on) that the expected states don't change with the date the corpus is replayed on.
+ * <p/>
+ * Regenerate with: ./gradlew :benchmarks:traceCorpus
+ */
+final class TraceCorpus {
+
+    static final File DIRECTORY = new File("src/test/traces");
+
+    static final String[] NAMES = {"typing", "corrections", "deletes", "swipes", "pastes"};
+
+    private static final int SESSIONS = 50;
+
+    private static final int DELETE = -1;
+
+    private final Random mRandom;
+
+    private KeystrokeTrace mTrace;
+
+    private LegacyCardInput mLegacy;
+
+    private long mTime;
+
+    private TraceCorpus(long seed) {
+        mRandom = new Random(seed);
+    }
+
+    public static void main(String[] args) throws IOException {
+        File directory = (args.length > 0) ? new File(args[0]) : DIRECTORY;
+        if ((!directory.isDirectory()) && (!directory.mkdirs())) {
+            throw new IOException("Can't create " + directory);
+        }
+        for (String name : NAMES) {
+            KeystrokeTrace[] corpus = generate(name);
+            OutputStream out = new FileOutputStream(new File(directory, name + ".trace"));
+            try {
+                KeystrokeTrace.writeCorpus(out, corpus);
+            } finally {
+                out.close();
+            }
+            System.out.println(name + ": " + corpus.length + " traces");
+        }
+    }
+
+    /**
+     * Reads one of the checked in corpus files.
+     */
+    static KeystrokeTrace[] read(File directory, String name) throws IOException {
+        InputStream in = new FileInputStream(new File(directory, name + ".trace"));
+        try {
+            return KeystrokeTrace.readCorpus(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Generates the sessions of the given kind, always the same ones for the same name.
+     */
+    static KeystrokeTrace[] generate(String name) {
+        TraceCorpus corpus = new TraceCorpus(name.hashCode());
+        KeystrokeTrace[] traces = new KeystrokeTrace[SESSIONS];
+        for (int index = 0; index < traces.length; index++) {
+            corpus.begin();
+            if ("typing".equals(name)) {
+                corpus.typing();
+            } else if ("corrections".equals(name)) {
+                corpus.corrections();
+            } else if ("deletes".equals(name)) {
+                corpus.deletes();
+            } else if ("swipes".equals(name)) {
+                corpus.swipes();
+            } else if ("pastes".equals(name)) {
+                corpus.pastes();
+            } else {
+                throw new IllegalArgumentException("Unknown corpus " + name);
+            }
+            traces[index] = corpus.end();
+        }
+        return traces;
+    }
+
+    /**
+     * A fast typer getting everything right first time.
+     */
+    private void typing() {
+        String number = randomNumber();
+        typeAll(number, 40, 90);
+        typeAll(randomExpiry(), 40, 90);
+        typeAll(randomCVC(number), 40, 90);
+    }
+
+    /**
+     * Typos fixed straight away, numbers that fail the check or have an unknown prefix, months
+     * that don't exist and years that have passed.
+     */
+    private void corrections() {
+        String number = randomNumber();
+        int roll = mRandom.nextInt(3);
+        if (roll == 0) {
+            //an unknown prefix, spotted from the error
+            type(1, 120, 250);
+            type(2 + mRandom.nextInt(2), 120, 250);
+            type(mRandom.nextInt(10), 120, 250);
+            deleteAll(3, 150, 300);
+        } else if (roll == 1) {
+            //the last digit wrong, so the check fails
+            typeAll(number.substring(0, number.length() - 1), 80, 200);
+            type((number.charAt(number.length() - 1) - '0' + 1) % 10, 80, 200);
+            type(mRandom.nextInt(10), 300, 600);
+            delete(400, 800);
+            type(number.charAt(number.length() - 1) - '0', 80, 200);
+        }
+        if (roll != 1) {
+            for (int index = 0; index < number.length(); index++) {
+                if (mRandom.nextInt(8) == 0) {
+                    type(mRandom.nextInt(10), 80, 200);
+                    delete(200, 500);
+                }
+                type(number.charAt(index) - '0', 80, 200);
+            }
+        }
+
+        //a month that doesn't exist, then an expired year
+        typeAll("13", 100, 250);
+        type(2, 100, 250);
+        typeAll(Integer.toString(10 + mRandom.nextInt(10)), 100, 250);
+        delete(300, 600);
+        typeAll(randomExpiry().substring(2), 100, 250);
+        typeAll(randomCVC(number), 100, 250);
+        type(mRandom.nextInt(10), 100, 250);
+    }
+
+    /**
+     * Everything entered, then deleted back across the CVC, year, month and number, and typed
+     * again.
+     */
+    private void deletes() {
+        String number = randomNumber();
+        String typed = number + randomExpiry() + randomCVC(number);
+        typeAll(typed, 50, 150);
+        int deletes = 1 + mRandom.nextInt(typed.length() + 3);
+        deleteAll(deletes, 40, 120);
+        int from = Math.max(0, typed.length() - deletes);
+        typeAll(typed.substring(from), 50, 150);
+    }
+
+    /**
+     * A swiped number, sometimes a misread one swiped again, then the rest typed.
+     */
+    private void swipes() {
+        String number = randomNumber();
+        if (mRandom.nextInt(4) == 0) {
+            StringBuilder misread = new StringBuilder(number);
+            int index = 2 + mRandom.nextInt(number.length() - 2);
+            misread.setCharAt(index, (char) ('0' + ((number.charAt(index) - '0' + 1) % 10)));
+            setNumber(misread.toString(), 500, 1000);
+        }
+        setNumber(number, 500, 1000);
+        typeAll(randomExpiry(), 80, 200);
+        typeAll(randomCVC(number), 80, 200);
+    }
+
+    /**
+     * Pasted numbers, with spaces or dashes, cut short or with digits to spare.
+     */
+    private void pastes() {
+        String number = randomNumber();
+        switch (mRandom.nextInt(4)) {
+            case 0:
+                setNumber(format(number, ' '), 800, 2000);
+                break;
+            case 1:
+                setNumber(format(number, '-'), 800, 2000);
+                break;
+            case 2:
+                //cut short, the rest typed
+                int cut = 2 + mRandom.nextInt(number.length() - 2);
+                setNumber(number.substring(0, cut), 800, 2000);
+                typeAll(number.substring(cut), 80, 200);
+                break;
+            default:
+                setNumber(number + randomDigits(1 + mRandom.nextInt(8)), 800, 2000);
+                break;
+        }
+        if (mLegacy.getMode() == Mode.NUMBER) {
+            //too long for its type, so typed again
+            deleteAll(mLegacy.getNumber().length(), 40, 120);
+            typeAll(number, 80, 200);
+        }
+        typeAll(randomExpiry(), 80, 200);
+        typeAll(randomCVC(number), 80, 200);
+    }
+
+    private void begin() {
+        mTrace = new KeystrokeTrace();
+        mLegacy = new LegacyCardInput();
+        mTime = 0;
+    }
+
+    private KeystrokeTrace end() {
+        int month = 0;
+        int year = 0;
+        if (mLegacy.getMode().ordinal() > Mode.EXPIRY_MONTH.ordinal()) {
+            month = Integer.parseInt(mLegacy.getMonth().toString());
+        }
+        if (mLegacy.getMode().ordinal() > Mode.EXPIRY_YEAR.ordinal()) {
+            year = Integer.parseInt(mLegacy.getYear().toString());
+        }
+        mTrace.finish(mLegacy.getNumber(), month, year, mLegacy.getCVC(), mLegacy.isCompleted());
+        return mTrace;
+    }
+
+    private void typeAll(String digits, int minDelay, int maxDelay) {
+        for (int index = 0; index < digits.length(); index++) {
+            type(digits.charAt(index) - '0', minDelay, maxDelay);
+        }
+    }
+
+    private void type(int digit, int minDelay, int maxDelay) {
+        wait(minDelay, maxDelay);
+        if (digit == DELETE) {
+            mTrace.recordDelete(mTime);
+            mLegacy.applyDelete();
+        } else {
+            mTrace.recordDigit(digit, mTime);
+            mLegacy.applyDigit(digit);
+        }
+    }
+
+    private void deleteAll(int count, int minDelay, int maxDelay) {
+        for (int index = 0; index < count; index++) {
+            delete(minDelay, maxDelay);
+        }
+    }
+
+    private void delete(int minDelay, int maxDelay) {
+        type(DELETE, minDelay, maxDelay);
+    }
+
+    private void setNumber(String number, int minDelay, int maxDelay) {
+        wait(minDelay, maxDelay);
+        mTrace.recordNumber(number, mTime);
+        mLegacy.setNumber(number);
+    }
+
+    private void wait(int minDelay, int maxDelay) {
+        mTime += minDelay + mRandom.nextInt(maxDelay - minDelay + 1);
+    }
+
+    /**
+     * @return a VISA, MASTERCARD or AMEX number that passes the check.
+     */
+    private String randomNumber() {
+        String prefix;
+        int length;
+        switch (mRandom.nextInt(3)) {
+            case 0:
+                prefix = "4";
+                length = 16;
+                break;
+            case 1:
+                prefix = "5" + (1 + mRandom.nextInt(5));
+                length = 16;
+                break;
+            default:
+                prefix = mRandom.nextBoolean() ? "34" : "37";
+                length = 15;
+                break;
+        }
+        String body = prefix + randomDigits(length - prefix.length() - 1);
+        return body + getCheckDigit(body);
+    }
+
+    /**
+     * @return a month and a year from 2040 on, as typed (MMYY).
+     */
+    private String randomExpiry() {
+        int month = 1 + mRandom.nextInt(12);
+        int year = 40 + mRandom.nextInt(60);
+        return ((month < 10) ? "0" : "") + month + year;
+    }
+
+    private String randomCVC(String number) {
+        return randomDigits(CardInput.guessCardType(number.substring(0, 2)).getCVCLength());
+    }
+
+    private String randomDigits(int count) {
+        StringBuilder digits = new StringBuilder();
+        for (int index = 0; index < count; index++) {
+            digits.append((char) ('0' + mRandom.nextInt(10)));
+        }
+        return digits.toString();
+    }
+
+    private static String format(String number, char separator) {
+        StringBuilder formatted = new StringBuilder(number);
+        for (int index = formatted.length() - 4; index > 0; index -= 4) {
+            formatted.insert(index, separator);
+        }
+        return formatted.toString();
+    }
+
+    private static int getCheckDigit(String body) {
+        int sum = 0;
+        for (int index = 0; index < body.length(); index++) {
+            int digit = body.charAt(body.length() - 1 - index) - '0';
+            if ((index % 2) == 0) {
+                digit *= 2;
+                if (digit > 9) {
+                    digit -= 9;
+                }
+            }
+            sum += digit;
+        }
+        return (10 - (sum % 10)) % 10;
+    }
+}
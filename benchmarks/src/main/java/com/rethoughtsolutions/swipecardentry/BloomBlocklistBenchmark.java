@@ -0,0 +1,157 @@
+package com.rethoughtsolutions.swipecardentry;
+
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Opens a generated {@link BloomBlocklist} file, and checks numbers against it as they're typed.
+ * The file holds 8 digit BINs and full numbers, half each. The numbers checked are mostly not
+ * blocked (the normal case, most rejected by the filter alone), 1 in 16 are. Run with -prof gc to
+ * check that neither the lookups nor typing a number with the blocklist as its check allocate.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BloomBlocklistBenchmark {
+
+    private static final int COUNT = 4096;
+
+    @Param({"10000", "1000000"})
+    public int mEntries;
+
+    private File mFile;
+
+    private BloomBlocklist mBlocklist;
+
+    private final CardNumber[] mBins = new CardNumber[COUNT];
+
+    private final CardNumber[] mNumbers = new CardNumber[COUNT];
+
+    private final String[] mTyped = new String[COUNT];
+
+    private final CardInput mInput = new CardInput();
+
+    private int mIndex = 0;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        final Random random = new Random(42);
+        final List<CardNumber> entries = new ArrayList<CardNumber>(mEntries);
+        final List<String> blocked = new ArrayList<String>();
+        for (int index = 0; index < mEntries; index++) {
+            String entry = randomNumber(random, ((index % 2) == 0) ? 8 : 16);
+            entries.add(CardNumber.parse(entry));
+            if (blocked.size() < COUNT) {
+                blocked.add(entry);
+            }
+        }
+
+        mFile = File.createTempFile("blocklist", ".bin");
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(mFile));
+        try {
+            BloomBlocklist.write(entries, 0.01, out);
+        } finally {
+            out.close();
+        }
+        mBlocklist = BloomBlocklist.open(mFile);
+
+        for (int index = 0; index < COUNT; index++) {
+            String number = ((index % 16) == 0) ? blocked.get(index) : randomNumber(random, 16);
+            if (number.length() < 16) {
+                number += randomNumber(random, 16 - number.length());
+            }
+            mBins[index] = CardNumber.parse(number.substring(0, 8));
+            mNumbers[index] = CardNumber.parse(number);
+            //Visa numbers, so the entry checks every digit from the 6th on
+            mTyped[index] = "4" + number.substring(1);
+        }
+        mInput.setNumberCheck(mBlocklist);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.out.println("\nfile: " + mFile.length() + " bytes");
+        mFile.delete();
+    }
+
+    private static String randomNumber(Random random, int length) {
+        char[] digits = new char[length];
+        for (int index = 0; index < length; index++) {
+            digits[index] = (char) ('0' + random.nextInt(10));
+        }
+        return new String(digits);
+    }
+
+    private int next() {
+        mIndex = (mIndex + 1) & (COUNT - 1);
+        return mIndex;
+    }
+
+    /**
+     * Maps the file and checks its header, as done once when the entry is set up. Timed one call
+     * at a time, as every open maps the file again and the mappings are only released by GC.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Warmup(iterations = 20)
+    @Measurement(iterations = 100)
+    public int open() throws IOException {
+        return BloomBlocklist.open(mFile).size();
+    }
+
+    /**
+     * The check run on each keystroke once enough digits are entered, for the 6 - 8 digit BINs.
+     */
+    @Benchmark
+    public boolean checkBin() {
+        return mBlocklist.isBlocked(mBins[next()], false);
+    }
+
+    /**
+     * The check run once the number is complete, for every BIN length & the full number.
+     */
+    @Benchmark
+    public boolean checkComplete() {
+        return mBlocklist.isBlocked(mNumbers[next()], true);
+    }
+
+    /**
+     * Types a whole number into the entry logic a digit at a time, with the blocklist as its
+     * check, as the view does on each keystroke.
+     */
+    @Benchmark
+    public boolean typeNumber() {
+        final String number = mTyped[next()];
+        mInput.setNumber("");
+        for (int index = 0; index < number.length(); index++) {
+            mInput.applyDigit(number.charAt(index) - '0');
+        }
+        return mInput.isError();
+    }
+}
@@ -0,0 +1,74 @@
+package com.rethoughtsolutions.swipecardentry;
+
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The {@link CardInput} transition table against the nested switch logic it replaced
+ * ({@link LegacyCardInput}), typing a whole card then deleting it all again. That covers every
+ * field and each boundary the deletes fall through.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CardInputBenchmark {
+
+    private static final int DELETE = -1;
+
+    //VISA number, 12/99, 123, then 24 deletes (one more than needed) back to empty, 47 keys
+    private static final int[] SESSION = session("4111111111111111" + "1299" + "123", 24);
+
+    private final CardInput mInput = new CardInput();
+
+    private final LegacyCardInput mLegacy = new LegacyCardInput();
+
+    private static int[] session(String typed, int deletes) {
+        int[] keys = new int[typed.length() + deletes];
+        for (int index = 0; index < typed.length(); index++) {
+            keys[index] = typed.charAt(index) - '0';
+        }
+        for (int index = typed.length(); index < keys.length; index++) {
+            keys[index] = DELETE;
+        }
+        return keys;
+    }
+
+    @Benchmark
+    public boolean table() {
+        final CardInput input = mInput;
+        for (int key : SESSION) {
+            if (key == DELETE) {
+                input.applyDelete();
+            } else {
+                input.applyDigit(key);
+            }
+        }
+        return input.isCompleted();
+    }
+
+    @Benchmark
+    public boolean legacy() {
+        final LegacyCardInput input = mLegacy;
+        for (int key : SESSION) {
+            if (key == DELETE) {
+                input.applyDelete();
+            } else {
+                input.applyDigit(key);
+            }
+        }
+        return input.isCompleted();
+    }
+}
@@ -0,0 +1,126 @@
+package com.rethoughtsolutions.swipecardentry;
+
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link CardNumber} against holding the number as a String, for the operations a store of card
+ * numbers needs. Run with -prof gc: the bytes allocated per op by the store benchmarks are the
+ * size of one stored number.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CardNumberBenchmark {
+
+    private static final int COUNT = 4096;
+
+    private static final int STORED = 100000;
+
+    private final char[][] mChars = new char[COUNT][];
+
+    private final String[] mStrings = new String[COUNT];
+
+    private final CardNumber[] mNumbers = new CardNumber[COUNT];
+
+    private final Set<String> mStringSet = new HashSet<String>();
+
+    private final Set<CardNumber> mNumberSet = new HashSet<CardNumber>();
+
+    private int mIndex = 0;
+
+    @Setup
+    public void setUp() {
+        final Random random = new Random(1);
+        for (int index = 0; index < COUNT; index++) {
+            mStrings[index] = randomNumber(random);
+            mChars[index] = mStrings[index].toCharArray();
+            mNumbers[index] = CardNumber.parse(mStrings[index]);
+        }
+        //half of the lookups hit
+        for (int index = 0; index < STORED; index++) {
+            String number = ((index % 2) == 0) ? mStrings[index % COUNT] : randomNumber(random);
+            mStringSet.add(number);
+            mNumberSet.add(CardNumber.parse(number));
+        }
+    }
+
+    private static String randomNumber(Random random) {
+        char[] digits = new char[16];
+        digits[0] = '4';
+        for (int index = 1; index < digits.length; index++) {
+            digits[index] = (char) ('0' + random.nextInt(10));
+        }
+        return new String(digits);
+    }
+
+    private int next() {
+        mIndex = (mIndex + 1) & (COUNT - 1);
+        return mIndex;
+    }
+
+    /**
+     * Storing a number as a String, copied out of the entered text.
+     */
+    @Benchmark
+    public String storeString() {
+        return new String(mChars[next()]);
+    }
+
+    @Benchmark
+    public CardNumber storeCardNumber() {
+        return CardNumber.parse(mStrings[next()]);
+    }
+
+    /**
+     * Looking up a newly entered number, so its hash isn't cached yet.
+     */
+    @Benchmark
+    public boolean lookupString() {
+        return mStringSet.contains(new String(mChars[next()]));
+    }
+
+    @Benchmark
+    public boolean lookupCardNumber() {
+        return mNumberSet.contains(CardNumber.parse(mStrings[next()]));
+    }
+
+    @Benchmark
+    public boolean luhnString() {
+        return CardInput.CardType.VISA.validateNumber(mStrings[next()]);
+    }
+
+    @Benchmark
+    public boolean luhnCardNumber() {
+        return mNumbers[next()].isLuhnValid();
+    }
+
+    @Benchmark
+    public boolean equalsString() {
+        final int index = next();
+        return mStrings[index].equals(mStrings[(index + 1) & (COUNT - 1)]);
+    }
+
+    @Benchmark
+    public boolean equalsCardNumber() {
+        final int index = next();
+        return mNumbers[index].equals(mNumbers[(index + 1) & (COUNT - 1)]);
+    }
+}
@@ -0,0 +1,50 @@
+package com.rethoughtsolutions.swipecardentry;
+
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replays each file of the checked in {@link KeystrokeTrace} corpus through the entry logic, as a
+ * throughput check that also fails if any trace no longer ends in its recorded state. Run with
+ * -prof gc for the bytes allocated per replay.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class KeystrokeReplayBenchmark {
+
+    @Param({"typing", "corrections", "deletes", "swipes", "pastes"})
+    public String mCorpus;
+
+    private KeystrokeTrace[] mTraces;
+
+    @Setup
+    public void setUp() throws IOException {
+        mTraces = TraceCorpus.read(TraceCorpus.DIRECTORY, mCorpus);
+        KeystrokeTrace.ReplayResult result = KeystrokeTrace.replay(mTraces);
+        if (result.getMismatchCount() != 0) {
+            throw new IllegalStateException(mCorpus + ": " + result);
+        }
+    }
+
+    @Benchmark
+    public long replay() {
+        return KeystrokeTrace.replay(mTraces).getEventCount();
+    }
+}
@@ -0,0 +1,128 @@
+package com.rethoughtsolutions.swipecardentry;
+
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loads a generated {@link RecentCards} file and finds the matches for each digit of a number as
+ * it's typed. The file holds a use of each card, half of them used again, so replaying it has
+ * stale records to skip, and is small enough for the load not to rewrite it.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RecentCardsBenchmark {
+
+    private static final long MAX_AGE = TimeUnit.DAYS.toMillis(90);
+
+    @Param({"100", "10000"})
+    public int mCapacity;
+
+    private File mFile;
+
+    private RecentCards mCards;
+
+    private CardNumber[] mPrefixes;
+
+    private final int[] mMatches = new int[4];
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        mFile = File.createTempFile("recent", ".cards");
+        if (!mFile.delete()) {
+            throw new IOException("Can't delete " + mFile);
+        }
+        generate(mFile, mCapacity, new Random(42));
+        mCards = RecentCards.load(mFile, mCapacity, MAX_AGE);
+        if (mCards.size() != mCapacity) {
+            throw new IllegalStateException("Loaded " + mCards.size() + " of " + mCapacity);
+        }
+
+        //a number typed one digit at a time, that starts like many of the cards kept
+        final String typed = "4111111111111111";
+        mPrefixes = new CardNumber[typed.length()];
+        for (int length = 1; length <= typed.length(); length++) {
+            mPrefixes[length - 1] = CardNumber.parse(typed.substring(0, length));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.out.println("\nload: " + (mCards.getLoadNanos() / 1000) + " us, file: "
+                + mFile.length() + " bytes");
+        mFile.delete();
+    }
+
+    @Benchmark
+    public int load() throws IOException {
+        return RecentCards.load(mFile, mCapacity, MAX_AGE).size();
+    }
+
+    @Benchmark
+    public int findMatches() {
+        int count = 0;
+        for (CardNumber prefix : mPrefixes) {
+            count += mCards.findMatches(prefix, prefix.length() == 16, mMatches);
+        }
+        return count;
+    }
+
+    /**
+     * Writes a file holding the given number of cards, VISA or MASTERCARD and many sharing a BIN,
+     * with every other card used a second time.
+     */
+    static void generate(File file, int count, Random random) throws IOException {
+        final RecentCards cards = RecentCards.load(file, count, MAX_AGE);
+        final CardNumber[] numbers = new CardNumber[count];
+        final int[] months = new int[count];
+        final int[] years = new int[count];
+        while (cards.size() < count) {
+            final int index = cards.size();
+            final StringBuilder digits = new StringBuilder();
+            switch (random.nextInt(4)) {
+                case 0:
+                case 1:
+                    //a few common BINs
+                    digits.append("41111").append(random.nextInt(3));
+                    break;
+                case 2:
+                    digits.append('5').append(1 + random.nextInt(5));
+                    break;
+                default:
+                    digits.append('4');
+                    break;
+            }
+            while (digits.length() < 16) {
+                digits.append((char) ('0' + random.nextInt(10)));
+            }
+            numbers[index] = CardNumber.parse(digits);
+            months[index] = 1 + random.nextInt(12);
+            years[index] = 40 + random.nextInt(60);
+            //the same card twice is just used again, so another is generated in its place
+            cards.add(numbers[index], months[index], years[index]);
+        }
+        for (int index = 0; index < count; index += 2) {
+            cards.add(numbers[index], months[index], years[index]);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.rethoughtsolutions.swipecardentry.build;
+
+
+import com.rethoughtsolutions.swipecardentry.BloomBlocklist;
+import com.rethoughtsolutions.swipecardentry.CardNumber;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Build time tool that builds a {@link BloomBlocklist} file from a plain text file, with one BIN
+ * prefix or full card number per line, run by the library's buildBlocklist task. Spaces and
+ * dashes within a number are ignored, as are blank lines and lines starting with '#'.
+ * <p/>
+ * It shares CardNumber & BloomBlocklist with the library (see buildSrc/build.gradle), so the file
+ * is always written in the format the library reads. It can also be run by hand:
+ * BloomBlocklistBuilder &lt;input.txt&gt; &lt;output.bin&gt; [false positive rate]
+ */
+public final class BloomBlocklistBuilder {
+
+    public static final double DEFAULT_FALSE_POSITIVE_RATE = 0.01;
+
+    private BloomBlocklistBuilder() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if ((args.length < 2) || (args.length > 3)) {
+            System.err.println("Usage: BloomBlocklistBuilder <input.txt> <output.bin>"
+                    + " [false positive rate, default " + DEFAULT_FALSE_POSITIVE_RATE + "]");
+            System.exit(1);
+        }
+
+        double falsePositiveRate = (args.length == 3) ? Double.parseDouble(args[2])
+                : DEFAULT_FALSE_POSITIVE_RATE;
+        long start = System.nanoTime();
+        int count = build(new File(args[0]), new File(args[1]), falsePositiveRate);
+        System.out.println("Wrote " + count + " entries to " + args[1] + " in "
+                + ((System.nanoTime() - start) / 1000000) + "ms");
+    }
+
+    /**
+     * Builds a blocklist file from a text file of prefixes & numbers.
+     *
+     * @param input             the text file to read.
+     * @param output            the blocklist file to write.
+     * @param falsePositiveRate the rate of false positives to size the filter for.
+     * @return the number of distinct entries written.
+     * @throws IOException if the input can't be read or holds an invalid line, or the output
+     *                     can't be written.
+     */
+    public static int build(File input, File output, double falsePositiveRate)
+            throws IOException {
+        Set<CardNumber> entries = read(input);
+
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(output));
+        try {
+            BloomBlocklist.write(entries, falsePositiveRate, out);
+        } finally {
+            out.close();
+        }
+        return entries.size();
+    }
+
+    private static Set<CardNumber> read(File file) throws IOException {
+        Set<CardNumber> entries = new LinkedHashSet<CardNumber>();
+        BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), "US-ASCII"));
+        try {
+            StringBuilder digits = new StringBuilder();
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if ((line.length() == 0) || (line.startsWith("#"))) {
+                    continue;
+                }
+
+                digits.setLength(0);
+                for (int index = 0; index < line.length(); index++) {
+                    char c = line.charAt(index);
+                    if ((c != ' ') && (c != '-')) {
+                        digits.append(c);
+                    }
+                }
+
+                if (digits.length() < BloomBlocklist.MIN_PREFIX_LENGTH) {
+                    throw new IOException(file + ":" + lineNumber + ": less than "
+                            + BloomBlocklist.MIN_PREFIX_LENGTH + " digits");
+                }
+                try {
+                    entries.add(CardNumber.parse(digits));
+                } catch (IllegalArgumentException e) {
+                    throw new IOException(file + ":" + lineNumber + ": " + e.getMessage());
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return entries;
+    }
+}
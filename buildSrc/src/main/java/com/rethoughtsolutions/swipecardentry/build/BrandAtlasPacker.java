@@ -0,0 +1,200 @@
+package com.rethoughtsolutions.swipecardentry.build;
+
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Build time tool that packs the brand logos and CVC images into one atlas bitmap per density,
+ * run by the library's packBrandAtlas task. For each drawable-* folder of PNGs it writes the atlas
+ * to drawable-*&#47;NAME.png, and an integer-array per image to values-*&#47;NAME.xml, named
+ * NAME_IMAGE, holding the image's left, top, right and bottom within the atlas.
+ * <p/>
+ * It can also be run by hand: BrandAtlasPacker &lt;source dir&gt; &lt;output dir&gt; &lt;name&gt;
+ */
+public final class BrandAtlasPacker {
+
+    //transparent gap around each image, so filtering while scaling never picks up a neighbour
+    private static final int PADDING = 2;
+
+    private static final class Image {
+
+        private final String mName;
+
+        private final BufferedImage mImage;
+
+        private int mLeft;
+
+        private int mTop;
+
+        Image(String name, BufferedImage image) {
+            mName = name;
+            mImage = image;
+        }
+    }
+
+    private BrandAtlasPacker() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 3) {
+            System.err.println("Usage: BrandAtlasPacker <source dir> <output dir> <name>");
+            System.exit(1);
+        }
+        pack(new File(args[0]), new File(args[1]), args[2]);
+    }
+
+    /**
+     * Packs the images in each drawable-* folder of the source folder into an atlas.
+     *
+     * @param sourceDir the folder holding drawable-* folders of PNGs.
+     * @param outputDir the resource folder to write the atlases and their indexes to.
+     * @param name      the name of the atlas resources.
+     * @throws IOException if an image can't be read or an atlas can't be written.
+     */
+    public static void pack(File sourceDir, File outputDir, String name) throws IOException {
+        File[] densities = sourceDir.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return file.isDirectory() && file.getName().startsWith("drawable");
+            }
+        });
+        if (densities == null) {
+            throw new IOException("Not a directory: " + sourceDir);
+        }
+
+        Arrays.sort(densities);
+        for (File density : densities) {
+            packDensity(density, outputDir, name);
+        }
+    }
+
+    private static void packDensity(File sourceDir, File outputDir, String name)
+            throws IOException {
+        File[] files = sourceDir.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return file.getName().endsWith(".png");
+            }
+        });
+        if ((files == null) || (files.length == 0)) {
+            return;
+        }
+        Arrays.sort(files);
+
+        final Image[] images = new Image[files.length];
+        long separateBytes = 0;
+        for (int index = 0; index < files.length; index++) {
+            BufferedImage image = ImageIO.read(files[index]);
+            if (image == null) {
+                throw new IOException("Not an image: " + files[index]);
+            }
+            String fileName = files[index].getName();
+            images[index] = new Image(fileName.substring(0, fileName.length() - 4), image);
+            separateBytes += 4L * image.getWidth() * image.getHeight();
+        }
+
+        //shelves of the tallest images first, trying every width and keeping the smallest area
+        final Image[] sorted = images.clone();
+        Arrays.sort(sorted, new Comparator<Image>() {
+            @Override
+            public int compare(Image lhs, Image rhs) {
+                return rhs.mImage.getHeight() - lhs.mImage.getHeight();
+            }
+        });
+        int minimumWidth = 0;
+        int totalWidth = PADDING;
+        for (Image image : sorted) {
+            minimumWidth = Math.max(minimumWidth, image.mImage.getWidth() + (2 * PADDING));
+            totalWidth += image.mImage.getWidth() + PADDING;
+        }
+        int bestWidth = totalWidth;
+        long bestArea = Long.MAX_VALUE;
+        for (int width = minimumWidth; width <= totalWidth; width++) {
+            long area = (long) width * layout(sorted, width);
+            if (area < bestArea) {
+                bestArea = area;
+                bestWidth = width;
+            }
+        }
+        final int height = layout(sorted, bestWidth);
+
+        BufferedImage atlas = new BufferedImage(bestWidth, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D graphics = atlas.createGraphics();
+        for (Image image : sorted) {
+            graphics.drawImage(image.mImage, image.mLeft, image.mTop, null);
+        }
+        graphics.dispose();
+
+        final String qualifiers = sourceDir.getName().substring("drawable".length());
+        File drawableDir = new File(outputDir, "drawable" + qualifiers);
+        File valuesDir = new File(outputDir, "values" + qualifiers);
+        if ((!drawableDir.isDirectory() && !drawableDir.mkdirs())
+                || (!valuesDir.isDirectory() && !valuesDir.mkdirs())) {
+            throw new IOException("Unable to create " + drawableDir + " or " + valuesDir);
+        }
+        ImageIO.write(atlas, "png", new File(drawableDir, name + ".png"));
+        writeIndex(images, new File(valuesDir, name + ".xml"), name);
+
+        System.out.println(name + qualifiers + ": " + images.length + " bitmaps, "
+                + separateBytes + " bytes -> 1 bitmap " + bestWidth + "x" + height + ", "
+                + (4L * bestWidth * height) + " bytes");
+    }
+
+    /**
+     * Places the images in shelves of the given width.
+     *
+     * @return the height of the atlas.
+     */
+    private static int layout(Image[] images, int width) {
+        int left = PADDING;
+        int top = PADDING;
+        int shelfHeight = 0;
+        for (Image image : images) {
+            if ((left > PADDING) && (left + image.mImage.getWidth() + PADDING > width)) {
+                top += shelfHeight + PADDING;
+                left = PADDING;
+                shelfHeight = 0;
+            }
+            image.mLeft = left;
+            image.mTop = top;
+            left += image.mImage.getWidth() + PADDING;
+            shelfHeight = Math.max(shelfHeight, image.mImage.getHeight());
+        }
+        return top + shelfHeight + PADDING;
+    }
+
+    private static void writeIndex(Image[] images, File file, String name) throws IOException {
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            writer.write("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n");
+            writer.write("<!-- Generated by BrandAtlasPacker, do not edit. -->\n");
+            writer.write("<resources>\n");
+            for (Image image : images) {
+                writer.write("    <integer-array name=\"" + name + "_" + image.mName + "\">\n");
+                writeItem(writer, image.mLeft);
+                writeItem(writer, image.mTop);
+                writeItem(writer, image.mLeft + image.mImage.getWidth());
+                writeItem(writer, image.mTop + image.mImage.getHeight());
+                writer.write("    </integer-array>\n");
+            }
+            writer.write("</resources>\n");
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static void writeItem(Writer writer, int value) throws IOException {
+        writer.write("        <item>" + value + "</item>\n");
+    }
+}
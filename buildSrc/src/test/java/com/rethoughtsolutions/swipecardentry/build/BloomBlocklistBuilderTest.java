@@ -0,0 +1,88 @@
+package com.rethoughtsolutions.swipecardentry.build;
+
+
+import com.rethoughtsolutions.swipecardentry.BloomBlocklist;
+import com.rethoughtsolutions.swipecardentry.CardNumber;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BloomBlocklistBuilderTest {
+
+    @Rule
+    public final TemporaryFolder mFolder = new TemporaryFolder();
+
+    private File writeInput(String text) throws IOException {
+        File file = mFolder.newFile();
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(text.getBytes("US-ASCII"));
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    private BloomBlocklist build(String text) throws IOException {
+        File output = mFolder.newFile();
+        int count = BloomBlocklistBuilder.build(writeInput(text), output,
+                BloomBlocklistBuilder.DEFAULT_FALSE_POSITIVE_RATE);
+        BloomBlocklist blocklist = BloomBlocklist.open(output);
+        assertEquals(count, blocklist.size());
+        return blocklist;
+    }
+
+    private static boolean isBlocked(BloomBlocklist blocklist, String number, boolean complete) {
+        return blocklist.isBlocked(CardNumber.parse(number), complete);
+    }
+
+    @Test
+    public void buildsFileTheLibraryReads() throws IOException {
+        BloomBlocklist blocklist = build("411111\n52000012\n5555555555554444\n");
+        assertEquals(3, blocklist.size());
+        assertTrue(isBlocked(blocklist, "4111111111111111", false));
+        assertTrue(isBlocked(blocklist, "5200001234567890", false));
+        assertFalse(isBlocked(blocklist, "5555555555554444", false));
+        assertTrue(isBlocked(blocklist, "5555555555554444", true));
+        assertFalse(isBlocked(blocklist, "4111121111111111", true));
+    }
+
+    @Test
+    public void ignoresFormattingCommentsAndBlankLines() throws IOException {
+        BloomBlocklist blocklist = build("# lost & stolen\n\n  4111 11  \n5555-5555-5555-4444\r\n"
+                + "   \n#520000\n");
+        assertEquals(2, blocklist.size());
+        assertTrue(isBlocked(blocklist, "411111", false));
+        assertTrue(isBlocked(blocklist, "5555555555554444", true));
+        assertFalse(isBlocked(blocklist, "5200001234567890", true));
+    }
+
+    @Test
+    public void dropsDuplicates() throws IOException {
+        assertEquals(1, build("411111\n4111 11\n411111\n").size());
+    }
+
+    @Test
+    public void rejectsInvalidLines() throws IOException {
+        //too short, not a number, too long
+        for (String text : new String[]{"411111\n41111\n", "41111x\n", "41111111111111111111\n"}) {
+            try {
+                build(text);
+                fail("Built a blocklist from " + text);
+            } catch (IOException e) {
+                assertTrue(e.getMessage(), e.getMessage().contains(":"));
+            }
+        }
+    }
+}